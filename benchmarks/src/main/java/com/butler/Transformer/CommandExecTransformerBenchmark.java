@@ -0,0 +1,72 @@
+package com.butler.Transformer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * CommandExecTransformer.transform 对运行时 JDK 中真实 ProcessImpl / UNIXProcess 字节码的改写开销，
+ * 以及非目标类（每个类加载都会经过）的直通开销。
+ *
+ * UNIXProcess 只存在于 JDK 8，在 JDK 8 上运行时使用 -p className=java/lang/UNIXProcess。
+ */
+@BenchmarkMode({Mode.AverageTime, Mode.Throughput})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Drasp.log.console=false", "-Drasp.store.path="})
+@State(Scope.Thread)
+public class CommandExecTransformerBenchmark {
+
+    @Param({"java/lang/ProcessImpl"})
+    public String className;
+
+    private CommandExecTransformer transformer;
+    private byte[] target;
+    private byte[] nonTarget;
+
+    @Setup
+    public void setup() throws IOException {
+        transformer = new CommandExecTransformer(null);
+        target = classBytes(className);
+        nonTarget = classBytes("java/lang/String");
+    }
+
+    @Benchmark
+    public byte[] transformTarget() throws Exception {
+        return transformer.transform(null, className, null, null, target);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public byte[] transformNonTarget() throws Exception {
+        return transformer.transform(null, "java/lang/String", null, null, nonTarget);
+    }
+
+    private static byte[] classBytes(String internalName) throws IOException {
+        try (InputStream in = Object.class.getResourceAsStream("/" + internalName + ".class")) {
+            if (in == null) {
+                throw new IOException("Class not found in runtime JDK: " + internalName);
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.butler.helper;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * RaspLoggerHelper 调用线程侧的开销（入队），单线程与多线程竞争对比。
+ *
+ * 使用 BLOCK 策略，测得的吞吐受写线程写盘速度约束，反映持续压力下的真实开销；
+ * 默认的 DROP 策略在缓冲区满后只做计数，可用 -jvmArgsAppend -Drasp.log.overflow=DROP 对比。
+ * 日志文件写在当前目录，建议在临时目录下运行。
+ */
+@BenchmarkMode({Mode.AverageTime, Mode.Throughput})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Drasp.log.console=false", "-Drasp.store.path=", "-Drasp.log.overflow=BLOCK"})
+@State(Scope.Benchmark)
+public class RaspLoggerHelperBenchmark {
+
+    private static final String MESSAGE = "Find Command execute: /usr/bin/ls -la /var/log/app";
+    private static final byte[] PROG = "/usr/bin/ls\0".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] ARG_BLOCK = "-la\0/var/log/app\0".getBytes(StandardCharsets.UTF_8);
+
+    @Benchmark
+    @Threads(1)
+    public void info1Thread() {
+        RaspLoggerHelper.info(MESSAGE);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void info8Threads() {
+        RaspLoggerHelper.info(MESSAGE);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void infoArgBlock8Threads() {
+        RaspLoggerHelper.infoArgBlock("[*] [RASPSimple] Find Command execute: ", PROG, ARG_BLOCK);
+    }
+}
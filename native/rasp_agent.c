@@ -1,9 +1,12 @@
 #include <stdio.h>
+#include <stdlib.h>
 #include <string.h>
 #include <jni.h>
 #include <jvmti.h>
 #include <stdarg.h>
 #include <time.h>
+#include <stdatomic.h>
+#include <stdint.h>
 #ifdef _WIN32
 #include <windows.h>
 #else
@@ -17,6 +20,8 @@
 
 /* 全局 JVMTI 指针 */
 static jvmtiEnv *g_jvmti = NULL;
+/* Agent_OnLoad / Agent_OnAttach 已完成初始化；再次 attach 时不重复添加能力、注册回调 */
+static int g_initialized = 0;
 
 /* 保存原始函数地址（第一次绑定时保存） */
 static void *g_orig_ProcessImpl_create = NULL;
@@ -46,85 +51,263 @@ typedef jint (JNICALL *orig_forkAndExec_fn)(
         jboolean z1           /* Z */
 );
 
+/*
+ * 异步日志
+ *
+ * 被拦截的 forkAndExec / create 线程只把格式化后的消息写入固定大小的环形缓冲区（多生产者 CAS 抢占序号），
+ * 由后台写线程批量格式化时间戳并写盘：
+ * - 时间戳来自写线程每轮刷新的秒级粗粒度时钟，生产者不调用 time/localtime/strftime；
+ * - 写线程把一批记录拼接后一次写入日志文件和 stderr，再各 fflush 一次；
+ * - 缓冲区满时丢弃新记录并计数，不阻塞进程启动线程，写线程会定期输出丢弃条数。
+ * Agent_OnUnload 时写线程写完剩余日志后退出。
+ */
+#define LOG_RING_SIZE 512           /* 记录条数，必须为 2 的幂 */
+#define LOG_MSG_SIZE 1024           /* 单条消息上限，超出部分截断 */
+#define LOG_BATCH_SIZE (64 * 1024)  /* 写线程单次写盘的缓冲大小 */
+#define LOG_IDLE_MS 10              /* 无日志时写线程的休眠间隔 */
+
+typedef struct {
+    atomic_ullong seq;              /* 值为 序号 + 1 时表示该序号的记录已写入完成 */
+    long long time;                 /* 粗粒度时间（秒） */
+    char msg[LOG_MSG_SIZE];
+} log_record;
+
+static log_record g_log_ring[LOG_RING_SIZE];
+static atomic_ullong g_log_tail;    /* 下一个可抢占的序号（生产者） */
+static atomic_ullong g_log_head;    /* 下一个待消费的序号（写线程） */
+static atomic_ullong g_log_dropped;
+static atomic_llong g_coarse_clock;
+static atomic_int g_log_stop;
+static int g_log_writer_running = 0;
+
 static FILE *g_log_file = NULL;
 #ifdef _WIN32
-static CRITICAL_SECTION log_lock;
+static INIT_ONCE g_log_once = INIT_ONCE_STATIC_INIT;
+static HANDLE g_log_writer;
 #else
-static pthread_mutex_t log_lock = PTHREAD_MUTEX_INITIALIZER;
+static pthread_once_t g_log_once = PTHREAD_ONCE_INIT;
+static pthread_t g_log_writer;
 #endif
 
-static void rasplog_init_once() {
-    if (g_log_file == NULL) {
-        // 获取当前日期
-        time_t t = time(NULL);
-        struct tm tm_info;
+static void format_time(long long sec, char *buf, size_t size) {
+    time_t t = (time_t)sec;
+    struct tm tm_info;
 #ifdef _WIN32
-        localtime_s(&tm_info, &t);
+    localtime_s(&tm_info, &t);
 #else
-        localtime_r(&t, &tm_info);
+    localtime_r(&t, &tm_info);
 #endif
+    strftime(buf, size, "%Y-%m-%d %H:%M:%S", &tm_info);
+}
 
-        // 文件名：RASPSimple_Native_YYYYMMDD.log
-        char filename[256];
-        strftime(filename, sizeof(filename),
-                 "RASPSimple_Native_%Y%m%d.log", &tm_info);
+static void log_sleep_idle() {
+#ifdef _WIN32
+    Sleep(LOG_IDLE_MS);
+#else
+    struct timespec ts = {0, LOG_IDLE_MS * 1000000L};
+    nanosleep(&ts, NULL);
+#endif
+}
 
-        g_log_file = fopen(filename, "a");
-        if (g_log_file == NULL) {
-            fprintf(stderr, "[RASPSimple] Failed to open log file %s\n", filename);
-        } else {
-            fprintf(stderr, "[RASPSimple] Log file initialized: %s\n", filename);
-            fflush(stderr);
+static void log_write_batch(const char *batch, size_t len) {
+    if (len == 0) return;
+    if (g_log_file != NULL) {
+        fwrite(batch, 1, len, g_log_file);
+        fflush(g_log_file);
+    }
+    // 同时输出到控制台
+    fwrite(batch, 1, len, stderr);
+    fflush(stderr);
+}
+
+/* 消费所有已发布的记录，返回条数。只由写线程调用 */
+static int log_drain(char *batch) {
+    static long long cached_sec = -1;
+    static char timebuf[64];
+    static unsigned long long reported_dropped = 0;
+
+    size_t used = 0;
+    int n = 0;
+    unsigned long long head = atomic_load_explicit(&g_log_head, memory_order_relaxed);
+    while (1) {
+        log_record *r = &g_log_ring[head & (LOG_RING_SIZE - 1)];
+        if (atomic_load_explicit(&r->seq, memory_order_acquire) != head + 1) {
+            break;
+        }
+        if (r->time != cached_sec) {
+            cached_sec = r->time;
+            format_time(cached_sec, timebuf, sizeof(timebuf));
         }
+        /* 单条记录最多 LOG_MSG_SIZE + 时间戳，批量缓冲剩余空间不足时先写盘 */
+        if (LOG_BATCH_SIZE - used < LOG_MSG_SIZE + 128) {
+            log_write_batch(batch, used);
+            used = 0;
+        }
+        used += snprintf(batch + used, LOG_BATCH_SIZE - used, "[%s] [RASPSimple] %s\n", timebuf, r->msg);
+        head++;
+        /* 消息已拷贝到批量缓冲，槽位可以交还给生产者 */
+        atomic_store_explicit(&g_log_head, head, memory_order_release);
+        n++;
+    }
+
+    unsigned long long dropped = atomic_load_explicit(&g_log_dropped, memory_order_relaxed);
+    if (dropped != reported_dropped) {
+        char now[64];
+        format_time(atomic_load_explicit(&g_coarse_clock, memory_order_relaxed), now, sizeof(now));
+        used += snprintf(batch + used, LOG_BATCH_SIZE - used,
+                         "[%s] [RASPSimple] %llu log records dropped (ring buffer full)\n",
+                         now, dropped - reported_dropped);
+        reported_dropped = dropped;
+    }
+    log_write_batch(batch, used);
+    return n;
+}
 
 #ifdef _WIN32
-        InitializeCriticalSection(&log_lock);
+static DWORD WINAPI log_writer_main(LPVOID arg)
+#else
+static void *log_writer_main(void *arg)
 #endif
+{
+    static char batch[LOG_BATCH_SIZE];
+    (void)arg;
+    while (1) {
+        atomic_store_explicit(&g_coarse_clock, (long long)time(NULL), memory_order_relaxed);
+        int stopping = atomic_load(&g_log_stop);
+        int n = log_drain(batch);
+        if (stopping) {
+            break;
+        }
+        if (n == 0) {
+            log_sleep_idle();
+        }
     }
+    return 0;
 }
 
-static void rasplog(const char *fmt, ...) {
-    va_list ap;
-    va_start(ap, fmt);
-
-    char msg[1024];
-    vsnprintf(msg, sizeof(msg), fmt, ap);
-    va_end(ap);
+static void rasplog_init() {
+    atomic_store(&g_coarse_clock, (long long)time(NULL));
 
-    // 生成时间戳
+    // 文件名：RASPSimple_Native_YYYYMMDD.log
+    char filename[256];
     time_t t = time(NULL);
     struct tm tm_info;
-    char timebuf[64];
 #ifdef _WIN32
     localtime_s(&tm_info, &t);
 #else
     localtime_r(&t, &tm_info);
 #endif
-    strftime(timebuf, sizeof(timebuf), "%Y-%m-%d %H:%M:%S", &tm_info);
+    strftime(filename, sizeof(filename), "RASPSimple_Native_%Y%m%d.log", &tm_info);
 
-    rasplog_init_once();
+    g_log_file = fopen(filename, "a");
+    if (g_log_file == NULL) {
+        fprintf(stderr, "[RASPSimple] Failed to open log file %s\n", filename);
+    } else {
+        fprintf(stderr, "[RASPSimple] Log file initialized: %s\n", filename);
+    }
+    fflush(stderr);
 
 #ifdef _WIN32
-    EnterCriticalSection(&log_lock);
+    g_log_writer = CreateThread(NULL, 0, log_writer_main, NULL, 0, NULL);
+    g_log_writer_running = g_log_writer != NULL;
 #else
-    pthread_mutex_lock(&log_lock);
+    g_log_writer_running = pthread_create(&g_log_writer, NULL, log_writer_main, NULL) == 0;
 #endif
+    if (!g_log_writer_running) {
+        fprintf(stderr, "[RASPSimple] Failed to start log writer thread, logging synchronously\n");
+    }
+}
 
-    if (g_log_file != NULL) {
-        fprintf(g_log_file, "[%s] [RASPSimple] %s\n", timebuf, msg);
-        fflush(g_log_file);
+#ifdef _WIN32
+static BOOL CALLBACK rasplog_init_cb(PINIT_ONCE once, PVOID param, PVOID *ctx) {
+    rasplog_init();
+    return TRUE;
+}
+#endif
+
+static void rasplog_init_once() {
+#ifdef _WIN32
+    InitOnceExecuteOnce(&g_log_once, rasplog_init_cb, NULL, NULL);
+#else
+    pthread_once(&g_log_once, rasplog_init);
+#endif
+}
+
+static void rasplog(const char *fmt, ...) {
+    va_list ap;
+    rasplog_init_once();
+
+    if (!g_log_writer_running) {
+        /* 写线程未启动：退化为同步输出 */
+        char msg[LOG_MSG_SIZE];
+        char timebuf[64];
+        va_start(ap, fmt);
+        vsnprintf(msg, sizeof(msg), fmt, ap);
+        va_end(ap);
+        format_time((long long)time(NULL), timebuf, sizeof(timebuf));
+        fprintf(stderr, "[%s] [RASPSimple] %s\n", timebuf, msg);
+        if (g_log_file != NULL) {
+            fprintf(g_log_file, "[%s] [RASPSimple] %s\n", timebuf, msg);
+            fflush(g_log_file);
+        }
+        return;
     }
-    // 同时输出到控制台
-    fprintf(stderr, "[%s] [RASPSimple] %s\n", timebuf, msg);
-    fflush(stderr);
 
+    unsigned long long seq = atomic_load_explicit(&g_log_tail, memory_order_relaxed);
+    do {
+        if (seq - atomic_load_explicit(&g_log_head, memory_order_acquire) >= LOG_RING_SIZE) {
+            atomic_fetch_add_explicit(&g_log_dropped, 1, memory_order_relaxed);
+            return;
+        }
+    } while (!atomic_compare_exchange_weak(&g_log_tail, &seq, seq + 1));
+
+    log_record *r = &g_log_ring[seq & (LOG_RING_SIZE - 1)];
+    r->time = atomic_load_explicit(&g_coarse_clock, memory_order_relaxed);
+    va_start(ap, fmt);
+    vsnprintf(r->msg, sizeof(r->msg), fmt, ap);
+    va_end(ap);
+    atomic_store_explicit(&r->seq, seq + 1, memory_order_release);
+}
+
+/* 停止写线程并写完剩余日志 */
+static void rasplog_shutdown() {
+    if (!g_log_writer_running) return;
+    atomic_store(&g_log_stop, 1);
 #ifdef _WIN32
-    LeaveCriticalSection(&log_lock);
+    WaitForSingleObject(g_log_writer, INFINITE);
+    CloseHandle(g_log_writer);
 #else
-    pthread_mutex_unlock(&log_lock);
+    pthread_join(g_log_writer, NULL);
 #endif
+    g_log_writer_running = 0;
+    if (g_log_file != NULL) {
+        fclose(g_log_file);
+        g_log_file = NULL;
+    }
 }
 
+/*
+ * 黑名单多模式匹配（大小写不敏感的 Aho-Corasick 自动机）
+ *
+ * 所有关键字预先编译进一个确定性转移表，对命令只做一次线性扫描，不拷贝、不截断、不转小写：
+ * - 只对 ASCII 建转移表，非 ASCII 字节回到根状态（关键字均为 ASCII）；
+ * - '\0' 按空格处理，可以直接扫描以 '\0' 分隔的 argBlock；
+ * - 自动机在 Agent_OnLoad 中构建完成后只读，检测线程无需加锁。
+ *
+ * 关键字来源：设置了规则文件（agent 参数 rules=路径，或系统属性 -Drasp.rules.file）时，
+ * 只使用规则文件中显式声明为 native 阻断的关键字（"# @native 关键字1,关键字2"，Java 层按注释忽略），否则使用内置关键字。
+ * native 层不执行正则，规则的锚点在 Java 层只是预筛（"nc" 会出现在 "rsync" 中），直接按锚点阻断会拦下
+ * Java 层放行的命令，因此普通规则不进入 native 层；声明的关键字按子串匹配，命中即阻断。
+ */
+#define AC_ALPHABET 128
+
+typedef struct {
+    int *next;              /* next[state * AC_ALPHABET + c]，goto/fail 合并后的确定性转移 */
+    unsigned char *out;     /* 状态是否命中任一关键字（已沿 fail 链合并） */
+    int states;
+    int keywords;
+} ac_automaton;
+
 static const char *BLACKLIST_KEYWORDS[] = {
         "cat",
         "type",
@@ -138,26 +321,352 @@ static const char *BLACKLIST_KEYWORDS[] = {
         "wget"
 };
 
-static int matches_blacklist_simple(const char *cmd) {
-    if (!cmd) return 0;
-    for (int i = 0; i < sizeof(BLACKLIST_KEYWORDS)/sizeof(BLACKLIST_KEYWORDS[0]); i++) {
-        const char *pat = BLACKLIST_KEYWORDS[i];
-#ifdef _WIN32
-        /* Windows 没有 strcasestr，用 _stricmp+strstr 模拟 */
-        char lower_cmd[4096];
-        char lower_pat[256];
-        strncpy(lower_cmd, cmd, sizeof(lower_cmd)-1);
-        strncpy(lower_pat, pat, sizeof(lower_pat)-1);
-        _strlwr(lower_cmd);
-        _strlwr(lower_pat);
-        if (strstr(lower_cmd, lower_pat)) return 1;
-#else
-        if (strcasestr(cmd, pat)) return 1;
-#endif
+static ac_automaton *g_blacklist = NULL;
+
+/* ASCII 大小写折叠，非 ASCII 返回 -1 */
+static int ac_fold(unsigned char c) {
+    if (c >= AC_ALPHABET) return -1;
+    if (c >= 'A' && c <= 'Z') return c + ('a' - 'A');
+    return c;
+}
+
+static void ac_free(ac_automaton *ac) {
+    if (ac == NULL) return;
+    free(ac->next);
+    free(ac->out);
+    free(ac);
+}
+
+static ac_automaton *ac_build(const char **keywords, int n) {
+    int max_states = 1;
+    for (int i = 0; i < n; i++) {
+        max_states += (int)strlen(keywords[i]);
+    }
+
+    ac_automaton *ac = (ac_automaton *)calloc(1, sizeof(ac_automaton));
+    int *fail = (int *)calloc(max_states, sizeof(int));
+    int *queue = (int *)calloc(max_states, sizeof(int));
+    if (ac != NULL) {
+        ac->next = (int *)calloc((size_t)max_states * AC_ALPHABET, sizeof(int));
+        ac->out = (unsigned char *)calloc(max_states, 1);
+    }
+    if (ac == NULL || fail == NULL || queue == NULL || ac->next == NULL || ac->out == NULL) {
+        free(fail);
+        free(queue);
+        ac_free(ac);
+        return NULL;
+    }
+
+    /* 1. 构建字典树（0 号状态为根，根不会成为子节点，因此 0 同时表示“无转移”） */
+    ac->states = 1;
+    for (int i = 0; i < n; i++) {
+        const unsigned char *kw = (const unsigned char *)keywords[i];
+        int state = 0;
+        int valid = kw[0] != '\0';
+        for (const unsigned char *p = kw; *p && valid; p++) {
+            if (ac_fold(*p) < 0) valid = 0;
+        }
+        if (!valid) {
+            rasplog("Blacklist keyword ignored (empty or non-ASCII): %s", keywords[i]);
+            continue;
+        }
+        for (const unsigned char *p = kw; *p; p++) {
+            int c = ac_fold(*p);
+            int *slot = &ac->next[state * AC_ALPHABET + c];
+            if (*slot == 0) {
+                *slot = ac->states++;
+            }
+            state = *slot;
+        }
+        ac->out[state] = 1;
+        ac->keywords++;
+    }
+
+    /* 2. BFS 计算 fail 指针，并把 goto 补全为确定性转移 */
+    int head = 0, tail = 0;
+    for (int c = 0; c < AC_ALPHABET; c++) {
+        if (ac->next[c] != 0) {
+            queue[tail++] = ac->next[c];
+        }
+    }
+    while (head < tail) {
+        int state = queue[head++];
+        ac->out[state] |= ac->out[fail[state]];
+        for (int c = 0; c < AC_ALPHABET; c++) {
+            int child = ac->next[state * AC_ALPHABET + c];
+            int via_fail = ac->next[fail[state] * AC_ALPHABET + c];
+            if (child != 0) {
+                fail[child] = via_fail;
+                queue[tail++] = child;
+            } else {
+                ac->next[state * AC_ALPHABET + c] = via_fail;
+            }
+        }
+    }
+
+    free(fail);
+    free(queue);
+    return ac;
+}
+
+/*
+ * 从 *state 开始扫描 len 个字节，命中任一关键字返回 1；
+ * 未命中时把结束状态写回 *state，可接着扫描下一段（例如 prog 之后的 argBlock）。
+ */
+static int ac_scan(const ac_automaton *ac, const char *buf, size_t len, int *state) {
+    int s = *state;
+    for (size_t i = 0; i < len; i++) {
+        unsigned char b = (unsigned char)buf[i];
+        int c = ac_fold(b == '\0' ? ' ' : b);
+        s = c < 0 ? 0 : ac->next[s * AC_ALPHABET + c];
+        if (ac->out[s]) {
+            return 1;
+        }
     }
+    *state = s;
     return 0;
 }
 
+/* native 阻断关键字指令："# @native 关键字1,关键字2"，匹配时返回关键字列表起始位置，否则返回 NULL */
+static char *native_directive(char *line) {
+    if (*line != '#') return NULL;
+    line++;
+    while (*line == ' ' || *line == '\t') line++;
+    if (strncmp(line, "@native", 7) != 0 || (line[7] != ' ' && line[7] != '\t')) return NULL;
+    return line + 8;
+}
+
+/*
+ * 读取与 Java 层共用的规则文件，收集 "# @native" 声明的关键字构建自动机；读取失败返回 NULL。
+ * 文件中没有声明时自动机为空，native 层不做关键字阻断，检测完全由 Java 层的规则负责。
+ */
+static ac_automaton *ac_load_rules(const char *path) {
+    FILE *f = fopen(path, "rb");
+    if (f == NULL) {
+        rasplog("Failed to open rules file %s", path);
+        return NULL;
+    }
+    fseek(f, 0, SEEK_END);
+    long size = ftell(f);
+    fseek(f, 0, SEEK_SET);
+    char *text = size >= 0 ? (char *)malloc((size_t)size + 1) : NULL;
+    if (text == NULL || fread(text, 1, (size_t)size, f) != (size_t)size) {
+        rasplog("Failed to read rules file %s", path);
+        free(text);
+        fclose(f);
+        return NULL;
+    }
+    fclose(f);
+    text[size] = '\0';
+
+    /* 关键字直接指向 text 中切分后的片段，自动机构建完成后统一释放 */
+    int cap = 64, n = 0, line_no = 0;
+    const char **keywords = (const char **)malloc(cap * sizeof(char *));
+    char *line = text;
+    while (line != NULL && keywords != NULL) {
+        char *eol = strchr(line, '\n');
+        if (eol != NULL) *eol = '\0';
+        line_no++;
+
+        char *p = line;
+        while (*p == ' ' || *p == '\t' || *p == '\r') p++;
+        char *list = native_directive(p);
+        if (list != NULL) {
+            int found = 0;
+            for (char *tok = list; tok != NULL; ) {
+                char *comma = strchr(tok, ',');
+                if (comma != NULL) *comma = '\0';
+                /* 去掉首尾空白 */
+                while (*tok == ' ' || *tok == '\t') tok++;
+                char *end = tok + strlen(tok);
+                while (end > tok && (end[-1] == ' ' || end[-1] == '\t' || end[-1] == '\r')) *--end = '\0';
+                if (*tok != '\0') {
+                    if (n == cap) {
+                        cap *= 2;
+                        const char **grown = (const char **)realloc((void *)keywords, cap * sizeof(char *));
+                        if (grown == NULL) break;
+                        keywords = grown;
+                    }
+                    keywords[n++] = tok;
+                    found = 1;
+                }
+                tok = comma != NULL ? comma + 1 : NULL;
+            }
+            if (!found) {
+                rasplog("Rules file %s line %d: @native without keywords, ignored", path, line_no);
+            }
+        }
+        line = eol != NULL ? eol + 1 : NULL;
+    }
+
+    ac_automaton *ac = keywords != NULL ? ac_build(keywords, n) : NULL;
+    free((void *)keywords);
+    free(text);
+    return ac;
+}
+
+/*
+ * 初始化黑名单：优先使用规则文件，失败时退回内置关键字
+ */
+static void blacklist_init(const char *rules_path) {
+    /* 重复 attach 时其它线程可能正在使用当前自动机，保持不变 */
+    if (g_blacklist != NULL) {
+        rasplog("Blacklist already initialized: %d keywords", g_blacklist->keywords);
+        return;
+    }
+    ac_automaton *ac = NULL;
+    if (rules_path != NULL && rules_path[0] != '\0') {
+        ac = ac_load_rules(rules_path);
+        if (ac != NULL) {
+            rasplog("Blacklist loaded from %s: %d @native keywords, %d states", rules_path, ac->keywords, ac->states);
+            if (ac->keywords == 0) {
+                rasplog("No @native keywords in %s, native keyword blocking disabled (Java layer rules still apply)", rules_path);
+            }
+        }
+    }
+    if (ac == NULL) {
+        ac = ac_build(BLACKLIST_KEYWORDS, (int)(sizeof(BLACKLIST_KEYWORDS) / sizeof(BLACKLIST_KEYWORDS[0])));
+        if (ac != NULL) {
+            rasplog("Blacklist using builtin keywords: %d keywords, %d states", ac->keywords, ac->states);
+        }
+    }
+    g_blacklist = ac;
+}
+
+static int matches_blacklist(const char *cmd, size_t len) {
+    if (cmd == NULL || g_blacklist == NULL) return 0;
+    int state = 0;
+    return ac_scan(g_blacklist, cmd, len, &state);
+}
+
+/*
+ * 栈帧符号缓存
+ *
+ * 同一攻击反复触发时栈上的方法几乎不变。这里缓存 jmethodID → "类签名.方法名 方法签名"，
+ * 渲染栈时每帧只查一次表，未命中才调用 GetMethodName / GetMethodDeclaringClass / GetClassSignature。
+ * - 直接映射表，每个槽位由序号锁（seqlock）保护：读不加锁，读的过程中槽位被改写则按未命中处理；
+ *   写用 CAS 抢占槽位，抢不到就放弃本次缓存；
+ * - 类卸载后 jmethodID 失效且可能被复用，因此收到卸载通知时递增全局 epoch，旧 epoch 的条目全部作废。
+ *   优先使用 HotSpot 的 ClassUnload 扩展事件；不可用时退化为每次 GC 结束作废（类只会在 GC 中卸载）；
+ *   两者都不可用时不启用缓存。
+ */
+#define SYMBOL_CACHE_SIZE 1024      /* 槽位数，必须为 2 的幂 */
+#define SYMBOL_TEXT_SIZE 256        /* 超长的符号不缓存 */
+
+typedef struct {
+    atomic_uint seq;                /* 奇数表示正在写入 */
+    jmethodID method;
+    unsigned int epoch;
+    char text[SYMBOL_TEXT_SIZE];
+} symbol_entry;
+
+static symbol_entry g_symbol_cache[SYMBOL_CACHE_SIZE];
+static atomic_uint g_symbol_epoch;
+static int g_symbol_cache_enabled = 0;
+
+static symbol_entry *symbol_slot(jmethodID method) {
+    unsigned long long h = (unsigned long long)(uintptr_t)method * 0x9E3779B97F4A7C15ULL;
+    return &g_symbol_cache[(h >> 32) & (SYMBOL_CACHE_SIZE - 1)];
+}
+
+/* 命中时把符号拷贝到 out（至少 SYMBOL_TEXT_SIZE 字节）并返回 1 */
+static int symbol_cache_get(jmethodID method, char *out) {
+    symbol_entry *e = symbol_slot(method);
+    unsigned int seq = atomic_load_explicit(&e->seq, memory_order_acquire);
+    if (seq & 1) return 0;
+    if (e->method != method || e->epoch != atomic_load_explicit(&g_symbol_epoch, memory_order_acquire)) return 0;
+    memcpy(out, e->text, SYMBOL_TEXT_SIZE);
+    out[SYMBOL_TEXT_SIZE - 1] = '\0';
+    atomic_thread_fence(memory_order_acquire);
+    return atomic_load_explicit(&e->seq, memory_order_relaxed) == seq;
+}
+
+/* epoch 为解析符号之前读到的值，解析期间发生卸载时该条目天然作废 */
+static void symbol_cache_put(jmethodID method, unsigned int epoch, const char *text) {
+    size_t len = strlen(text);
+    if (len >= SYMBOL_TEXT_SIZE) return;
+    symbol_entry *e = symbol_slot(method);
+    unsigned int seq = atomic_load_explicit(&e->seq, memory_order_relaxed);
+    if ((seq & 1) || !atomic_compare_exchange_strong(&e->seq, &seq, seq + 1)) return;
+    e->method = method;
+    e->epoch = epoch;
+    memcpy(e->text, text, len + 1);
+    atomic_store_explicit(&e->seq, seq + 2, memory_order_release);
+}
+
+/* 扩展事件回调的参数因 JVM 而异，这里只关心"发生了卸载" */
+static void JNICALL cbClassUnload(jvmtiEnv *jvmti, ...) {
+    atomic_fetch_add(&g_symbol_epoch, 1);
+}
+
+static void JNICALL cbGarbageCollectionFinish(jvmtiEnv *jvmti) {
+    atomic_fetch_add(&g_symbol_epoch, 1);
+}
+
+/* 查找并注册 ClassUnload 扩展事件，成功返回 1 */
+static int register_class_unload_extension(jvmtiEnv *jvmti) {
+    jint count = 0;
+    jvmtiExtensionEventInfo *events = NULL;
+    int registered = 0;
+
+    if ((*jvmti)->GetExtensionEvents(jvmti, &count, &events) != JVMTI_ERROR_NONE) {
+        return 0;
+    }
+    for (int i = 0; i < count; ++i) {
+        if (!registered && events[i].id != NULL && strstr(events[i].id, "ClassUnload") != NULL) {
+            jvmtiError err = (*jvmti)->SetExtensionEventCallback(jvmti, events[i].extension_event_index,
+                                                                  (jvmtiExtensionEvent)cbClassUnload);
+            if (err == JVMTI_ERROR_NONE) {
+                rasplog("Symbol cache invalidated by extension event %s", events[i].id);
+                registered = 1;
+            }
+        }
+        for (int j = 0; j < events[i].param_count; ++j) {
+            (*jvmti)->Deallocate(jvmti, (unsigned char*)events[i].params[j].name);
+        }
+        (*jvmti)->Deallocate(jvmti, (unsigned char*)events[i].params);
+        (*jvmti)->Deallocate(jvmti, (unsigned char*)events[i].id);
+        (*jvmti)->Deallocate(jvmti, (unsigned char*)events[i].short_description);
+    }
+    (*jvmti)->Deallocate(jvmti, (unsigned char*)events);
+    return registered;
+}
+
+/* 解析一帧的符号，结果写入 out */
+static void resolve_frame_symbol(jmethodID method, char *out, size_t size) {
+    char *methodName = NULL;
+    char *methodSig = NULL;
+    char *classSig = NULL;
+    jclass declClass = NULL;
+    jvmtiError err;
+
+    err = (*g_jvmti)->GetMethodName(g_jvmti, method, &methodName, &methodSig, NULL);
+    if (err != JVMTI_ERROR_NONE) {
+        snprintf(out, size, "<GetMethodName error: %d>", err);
+        return;
+    }
+
+    err = (*g_jvmti)->GetMethodDeclaringClass(g_jvmti, method, &declClass);
+    if (err != JVMTI_ERROR_NONE) {
+        declClass = NULL;
+    }
+    if (declClass != NULL) {
+        err = (*g_jvmti)->GetClassSignature(g_jvmti, declClass, &classSig, NULL);
+        if (err != JVMTI_ERROR_NONE) {
+            classSig = NULL;
+        }
+    }
+
+    snprintf(out, size, "%s.%s %s",
+             classSig ? classSig : "<no-class>",
+             methodName ? methodName : "<no-method>",
+             methodSig ? methodSig : "");
+
+    if (methodName) (*g_jvmti)->Deallocate(g_jvmti, (unsigned char*)methodName);
+    if (methodSig)  (*g_jvmti)->Deallocate(g_jvmti, (unsigned char*)methodSig);
+    if (classSig)   (*g_jvmti)->Deallocate(g_jvmti, (unsigned char*)classSig);
+}
+
 static void print_jvmti_stack_trace(JNIEnv *env) {
     if (g_jvmti == NULL) {
         rasplog("print_jvmti_stack_trace: g_jvmti is NULL");
@@ -178,44 +687,104 @@ static void print_jvmti_stack_trace(JNIEnv *env) {
 
     rasplog("=== JVMTI StackTrace (frames=%d) ===", count);
     for (int i = 0; i < count; ++i) {
-        char *methodName = NULL;
-        char *methodSig = NULL;
-        char *classSig = NULL;
-        jclass declClass = NULL;
+        char symbol[LOG_MSG_SIZE];
 
         if (frames[i].method == NULL) {
             rasplog("#%d <unknown method> (location=%lld)", i, (long long)frames[i].location);
             continue;
         }
 
-        err = (*g_jvmti)->GetMethodName(g_jvmti, frames[i].method, &methodName, &methodSig, NULL);
-        if (err != JVMTI_ERROR_NONE) {
-            rasplog("#%d GetMethodName error: %d", i, err);
-            continue;
+        if (!g_symbol_cache_enabled) {
+            resolve_frame_symbol(frames[i].method, symbol, sizeof(symbol));
+        } else if (!symbol_cache_get(frames[i].method, symbol)) {
+            unsigned int epoch = atomic_load_explicit(&g_symbol_epoch, memory_order_acquire);
+            resolve_frame_symbol(frames[i].method, symbol, sizeof(symbol));
+            if (symbol[0] != '<') {
+                symbol_cache_put(frames[i].method, epoch, symbol);
+            }
         }
 
-        err = (*g_jvmti)->GetMethodDeclaringClass(g_jvmti, frames[i].method, &declClass);
-        if (err != JVMTI_ERROR_NONE) {
-            declClass = NULL;
+        rasplog("#%d %s (location=%lld)", i, symbol, (long long)frames[i].location);
+    }
+    rasplog("=== End StackTrace ===");
+}
+
+/*
+ * Java 层检测凭证：UNIXProcess.<init> 的 Java Hook 放行后会记录 argBlock 引用，
+ * forkAndExec 收到同一个数组时说明参数在两层之间未变化，可跳过 native 层的重复检测与日志。
+ * 通过 JNI 调用 ProcessCheckUtil.isNativeCleared([B)Z 查询（一次性消费）。
+ *
+ * 运行模式：native 层与 Java 层共用 RaspMode.MODE（通过缓存的类全局引用读取静态字段），规则一致：
+ * - OFF      不扫描，直接调用原始函数
+ * - MONITOR  扫描并记录日志，命中也不阻断
+ * - ENFORCE  扫描并阻断
+ * Java Agent 未加载时查找失败，每 64 次调用重试一次，期间按 ENFORCE 完整检测。
+ */
+#define RASP_MODE_OFF 0
+#define RASP_MODE_MONITOR 1
+#define RASP_MODE_ENFORCE 2
+
+static jclass g_check_util_class = NULL;
+static jmethodID g_is_native_cleared = NULL;
+static jclass g_mode_class = NULL;
+static jfieldID g_mode_field = NULL;
+static volatile int g_check_util_retry = 0;
+
+/* 查找并缓存 Java 层的类与成员，成功返回 1 */
+static int java_layer_resolve(JNIEnv *env) {
+    if (g_is_native_cleared != NULL && g_mode_field != NULL) return 1;
+    if ((g_check_util_retry++ & 63) != 0) return 0;
+
+    if (g_is_native_cleared == NULL) {
+        jclass cls = (*env)->FindClass(env, "com/butler/util/ProcessCheckUtil");
+        if (cls == NULL) {
+            (*env)->ExceptionClear(env);
+            return 0;
         }
-        if (declClass != NULL) {
-            err = (*g_jvmti)->GetClassSignature(g_jvmti, declClass, &classSig, NULL);
-            if (err != JVMTI_ERROR_NONE) {
-                classSig = NULL;
-            }
+        jmethodID mid = (*env)->GetStaticMethodID(env, cls, "isNativeCleared", "([B)Z");
+        if (mid == NULL) {
+            (*env)->ExceptionClear(env);
+            (*env)->DeleteLocalRef(env, cls);
+            return 0;
         }
+        g_check_util_class = (jclass)(*env)->NewGlobalRef(env, cls);
+        (*env)->DeleteLocalRef(env, cls);
+        g_is_native_cleared = mid;
+    }
 
-        rasplog("#%d %s.%s %s (location=%lld)", i,
-                classSig ? classSig : "<no-class>",
-                methodName ? methodName : "<no-method>",
-                methodSig ? methodSig : "",
-                (long long)frames[i].location);
+    jclass mode_cls = (*env)->FindClass(env, "com/butler/util/RaspMode");
+    if (mode_cls == NULL) {
+        (*env)->ExceptionClear(env);
+        return 0;
+    }
+    jfieldID fid = (*env)->GetStaticFieldID(env, mode_cls, "MODE", "I");
+    if (fid == NULL) {
+        (*env)->ExceptionClear(env);
+        (*env)->DeleteLocalRef(env, mode_cls);
+        return 0;
+    }
+    g_mode_class = (jclass)(*env)->NewGlobalRef(env, mode_cls);
+    (*env)->DeleteLocalRef(env, mode_cls);
+    g_mode_field = fid;
+    return 1;
+}
+
+/* 当前运行模式，Java Agent 未加载时按 ENFORCE 处理 */
+static int java_layer_mode(JNIEnv *env) {
+    if (!java_layer_resolve(env)) return RASP_MODE_ENFORCE;
+    jint mode = (*env)->GetStaticIntField(env, g_mode_class, g_mode_field);
+    return mode == RASP_MODE_OFF || mode == RASP_MODE_MONITOR ? (int)mode : RASP_MODE_ENFORCE;
+}
+
+static int java_layer_cleared(JNIEnv *env, jbyteArray argBlock) {
+    if (argBlock == NULL || !java_layer_resolve(env)) return 0;
 
-        if (methodName) (*g_jvmti)->Deallocate(g_jvmti, (unsigned char*)methodName);
-        if (methodSig)  (*g_jvmti)->Deallocate(g_jvmti, (unsigned char*)methodSig);
-        if (classSig)   (*g_jvmti)->Deallocate(g_jvmti, (unsigned char*)classSig);
+    jboolean cleared = (*env)->CallStaticBooleanMethod(env, g_check_util_class, g_is_native_cleared, argBlock);
+    if ((*env)->ExceptionCheck(env)) {
+        (*env)->ExceptionClear(env);
+        return 0;
     }
-    rasplog("=== End StackTrace ===");
+    return cleared == JNI_TRUE;
 }
 
 /* Hook 函数：ProcessImpl.create（保留你原来的实现，略微格式化） */
@@ -226,34 +795,30 @@ static jlong JNICALL My_ProcessImpl_create(
         jboolean redirectErrorStream)
 {
     const char *cmd_utf = NULL;
-    if (cmd != NULL) {
+    int mode = java_layer_mode(env);
+    if (cmd != NULL && mode != RASP_MODE_OFF) {
         cmd_utf = (*env)->GetStringUTFChars(env, cmd, NULL);
     }
 
     if (cmd_utf) {
         rasplog("Intercepted ProcessImpl.create cmd='%s'", cmd_utf);
 
-        if (matches_blacklist_simple(cmd_utf)) {
-
-            time_t t = time(NULL);
-            struct tm tm_info;
-#ifdef _WIN32
-            localtime_s(&tm_info, &t);
-#else
-            localtime_r(&t, &tm_info);
-#endif
-            char timebuf[64];
-            strftime(timebuf, sizeof(timebuf), "%Y-%m-%d %H:%M:%S", &tm_info);
-
-            rasplog("%s Blocked dangerous command at: %s", timebuf, cmd_utf);
-            print_jvmti_stack_trace(env);
-
-            (*env)->ReleaseStringUTFChars(env, cmd, cmd_utf);
-            return (jlong)-1;
+        if (matches_blacklist(cmd_utf, strlen(cmd_utf))) {
+            if (mode == RASP_MODE_MONITOR) {
+                rasplog("Monitor mode, dangerous command allowed: %s", cmd_utf);
+                print_jvmti_stack_trace(env);
+            } else {
+                /* 时间戳由日志写线程统一添加 */
+                rasplog("Blocked dangerous command at: %s", cmd_utf);
+                print_jvmti_stack_trace(env);
+
+                (*env)->ReleaseStringUTFChars(env, cmd, cmd_utf);
+                return (jlong)-1;
+            }
         }
 
         (*env)->ReleaseStringUTFChars(env, cmd, cmd_utf);
-    } else {
+    } else if (mode != RASP_MODE_OFF) {
         rasplog("Intercepted ProcessImpl.create but cmd is NULL");
     }
 
@@ -266,6 +831,32 @@ static jlong JNICALL My_ProcessImpl_create(
     }
 }
 
+/*
+ * 把 JNI 字节数组转换为可打印的预览：'\0' 与换行、制表符替换为空格，超出 size 的部分截断。
+ * 只用于日志，黑名单匹配始终针对完整数组。
+ */
+static void preview_bytes(char *dst, size_t size, const jbyte *src, jsize len) {
+    size_t n = (size_t)len < size - 1 ? (size_t)len : size - 1;
+    for (size_t i = 0; i < n; ++i) {
+        char c = (char)src[i];
+        dst[i] = (c == '\0' || c == '\n' || c == '\r' || c == '\t') ? ' ' : c;
+    }
+    // 去掉结尾 '\0' 转换出的空格
+    while (n > 0 && src[n - 1] == '\0') n--;
+    dst[n] = '\0';
+}
+
+static void byte_array_preview(JNIEnv *env, jbyteArray array, char *dst, size_t size) {
+    jbyte head[256];
+    dst[0] = '\0';
+    if (array == NULL) return;
+    jsize len = (*env)->GetArrayLength(env, array);
+    jsize copy = len < (jsize)sizeof(head) ? len : (jsize)sizeof(head);
+    if (copy <= 0) return;
+    (*env)->GetByteArrayRegion(env, array, 0, copy, head);
+    preview_bytes(dst, size, head, copy);
+}
+
 /* Hook 函数：UNIXProcess.forkAndExec */
 /* Hook 函数：UNIXProcess.forkAndExec（修正签名） */
 static jint JNICALL My_UNIXProcess_forkAndExec(
@@ -282,70 +873,59 @@ static jint JNICALL My_UNIXProcess_forkAndExec(
         jintArray ia1,
         jboolean z1)
 {
-    char helper_buf[256] = {0};
-    char prog_buf[256]   = {0};
-    char args_buf[2048]  = {0};
-
-    // ba1: helperpath
-    if (ba1 != NULL) {
-        jsize len = (*env)->GetArrayLength(env, ba1);
-        if (len > 0) {
-            jsize copy = len < sizeof(helper_buf)-1 ? len : sizeof(helper_buf)-1;
-            jbyte *pbytes = (*env)->GetByteArrayElements(env, ba1, NULL);
-            memcpy(helper_buf, pbytes, copy);
-            helper_buf[copy] = '\0';
-            (*env)->ReleaseByteArrayElements(env, ba1, pbytes, JNI_ABORT);
-        }
-    }
-
-    // ba2: cprog (e.g. "/bin/sh")
-    if (ba2 != NULL) {
-        jsize len = (*env)->GetArrayLength(env, ba2);
-        if (len > 0) {
-            jsize copy = len < sizeof(prog_buf)-1 ? len : sizeof(prog_buf)-1;
-            jbyte *pbytes = (*env)->GetByteArrayElements(env, ba2, NULL);
-            memcpy(prog_buf, pbytes, copy);
-            prog_buf[copy] = '\0';
-            (*env)->ReleaseByteArrayElements(env, ba2, pbytes, JNI_ABORT);
-        }
+    // OFF 模式，或 Java 层已放行同一个 argBlock：直接调用原始函数
+    int mode = java_layer_mode(env);
+    if (g_orig_UNIXProcess_forkAndExec != NULL
+            && (mode == RASP_MODE_OFF || java_layer_cleared(env, ba3))) {
+        orig_forkAndExec_fn orig = (orig_forkAndExec_fn)g_orig_UNIXProcess_forkAndExec;
+        return orig(env, process, someInt, ba1, ba2, ba3, i1, ba4, i2, ba5, ia1, z1);
     }
 
-    // ba3: argBlock (real arguments, e.g. "-c whoami")
+    char helper_buf[256];
+    char prog_buf[256];
+    char args_buf[LOG_MSG_SIZE];
+    jsize args_len = 0;
+    int blocked = 0;
+
+    // ba1 / ba2 只用于日志，取有长度上限的预览
+    byte_array_preview(env, ba1, helper_buf, sizeof(helper_buf));
+    byte_array_preview(env, ba2, prog_buf, sizeof(prog_buf));
+
+    /*
+     * ba3: argBlock（真实参数，例如 "-c whoami"，参数间以 '\0' 分隔）
+     * 在临界区内直接扫描 Java 数组，不拷贝、不截断；临界区内不能调用 JNI / JVMTI，
+     * 因此只做自动机扫描和日志预览，释放后再输出日志与栈。
+     */
+    args_buf[0] = '\0';
     if (ba3 != NULL) {
-        jsize len = (*env)->GetArrayLength(env, ba3);
-        if (len > 0) {
-            jsize copy = len < sizeof(args_buf)-1 ? len : sizeof(args_buf)-1;
-            jbyte *abytes = (*env)->GetByteArrayElements(env, ba3, NULL);
-            // translate nulls to spaces for readability
-            for (jsize i = 0, j = 0; i < copy; ++i) {
-                char c = (char)abytes[i];
-                if (c == '\0' || c == '\n' || c == '\r' || c == '\t') {
-                    if (j < sizeof(args_buf)-1) args_buf[j++] = ' ';
-                } else {
-                    if (j < sizeof(args_buf)-1) args_buf[j++] = c;
-                }
+        args_len = (*env)->GetArrayLength(env, ba3);
+        if (args_len > 0) {
+            jbyte *abytes = (jbyte *)(*env)->GetPrimitiveArrayCritical(env, ba3, NULL);
+            if (abytes == NULL) {
+                // 无法访问参数时不放行
+                rasplog("Unable to access UNIXProcess.forkAndExec argBlock (len=%d) - blocking", (int)args_len);
+                return (jint)-1;
             }
-            args_buf[sizeof(args_buf)-1] = '\0';
-            (*env)->ReleaseByteArrayElements(env, ba3, abytes, JNI_ABORT);
+            blocked = matches_blacklist((const char *)abytes, (size_t)args_len);
+            preview_bytes(args_buf, sizeof(args_buf), abytes, args_len);
+            (*env)->ReleasePrimitiveArrayCritical(env, ba3, abytes, JNI_ABORT);
         }
     }
 
-    // Combined
-    char combined[4096];
-    snprintf(combined, sizeof(combined), "%s %s %s",
-             helper_buf[0] ? helper_buf : "(null)",
-             prog_buf[0] ? prog_buf : "(null)",
-             args_buf[0] ? args_buf : "(null)");
+    rasplog("Intercepted UNIXProcess.forkAndExec someInt=%d helper='%s' prog='%s' args='%s' (len=%d)",
+            (int)someInt, helper_buf, prog_buf, args_buf, (int)args_len);
 
-    rasplog("Intercepted UNIXProcess.forkAndExec someInt=%d helper='%s' prog='%s' args='%s'",
-            (int)someInt, helper_buf, prog_buf, args_buf);
-
-    // ⚠️ 检查命令关键字（针对 args_buf）
-    if (matches_blacklist_simple(args_buf))
+    // ⚠️ 检查命令关键字（针对完整的 argBlock）
+    if (blocked)
     {
-        rasplog("Blocked dangerous command: %s", args_buf);
-        print_jvmti_stack_trace(env);
-        return (jint)-1;
+        if (mode == RASP_MODE_MONITOR) {
+            rasplog("Monitor mode, dangerous command allowed: %s", args_buf);
+            print_jvmti_stack_trace(env);
+        } else {
+            rasplog("Blocked dangerous command: %s", args_buf);
+            print_jvmti_stack_trace(env);
+            return (jint)-1;
+        }
     }
 
     // 调用原始
@@ -437,12 +1017,33 @@ JNIEXPORT jint JNICALL Agent_OnLoad(JavaVM *vm, char *options, void *reserved) {
     jvmtiEventCallbacks callbacks;
     rasplog("Agent_OnLoad called");
 
+    /* attach 请求由 Attach Listener 线程串行处理，无需加锁 */
+    if (g_initialized) {
+        rasplog("JVMTI agent already initialized, skipping");
+        return JNI_OK;
+    }
+
     rc = (*vm)->GetEnv(vm, (void**)&g_jvmti, JVMTI_VERSION_1_2);
     if (rc != JNI_OK || g_jvmti == NULL) {
         rasplog("Unable to get JVMTI env, rc=%d", rc);
         return JNI_ERR;
     }
 
+    /*
+     * 在开启 NativeMethodBind 事件之前构建好黑名单，Hook 生效时自动机已就绪。
+     * 来源：agent 参数 rules=路径 优先，其次与 Java 层相同的系统属性 rasp.rules.file
+     */
+    if (options != NULL && strncmp(options, "rules=", 6) == 0) {
+        blacklist_init(options + 6);
+    } else {
+        char *rules_path = NULL;
+        if ((*g_jvmti)->GetSystemProperty(g_jvmti, "rasp.rules.file", &rules_path) != JVMTI_ERROR_NONE) {
+            rules_path = NULL;
+        }
+        blacklist_init(rules_path);
+        if (rules_path) (*g_jvmti)->Deallocate(g_jvmti, (unsigned char*)rules_path);
+    }
+
     memset(&caps, 0, sizeof(caps));
     caps.can_generate_native_method_bind_events = 1;
     err = (*g_jvmti)->AddCapabilities(g_jvmti, &caps);
@@ -452,17 +1053,48 @@ JNIEXPORT jint JNICALL Agent_OnLoad(JavaVM *vm, char *options, void *reserved) {
 
     memset(&callbacks, 0, sizeof(callbacks));
     callbacks.NativeMethodBind = &cbNativeMethodBind;
+
+    /* 栈帧符号缓存需要类卸载通知，拿不到时不启用 */
+    int gc_invalidation = 0;
+    if (register_class_unload_extension(g_jvmti)) {
+        g_symbol_cache_enabled = 1;
+    } else {
+        jvmtiCapabilities potential;
+        memset(&potential, 0, sizeof(potential));
+        if ((*g_jvmti)->GetPotentialCapabilities(g_jvmti, &potential) == JVMTI_ERROR_NONE
+                && potential.can_generate_garbage_collection_events) {
+            memset(&caps, 0, sizeof(caps));
+            caps.can_generate_garbage_collection_events = 1;
+            if ((*g_jvmti)->AddCapabilities(g_jvmti, &caps) == JVMTI_ERROR_NONE) {
+                callbacks.GarbageCollectionFinish = &cbGarbageCollectionFinish;
+                gc_invalidation = 1;
+            }
+        }
+        if (!gc_invalidation) {
+            rasplog("No class unload notification available, symbol cache disabled");
+        }
+    }
+
     err = (*g_jvmti)->SetEventCallbacks(g_jvmti, &callbacks, sizeof(callbacks));
     if (err != JVMTI_ERROR_NONE) {
         rasplog("SetEventCallbacks failed: %d", err);
         return JNI_ERR;
     }
 
+    if (gc_invalidation) {
+        err = (*g_jvmti)->SetEventNotificationMode(g_jvmti, JVMTI_ENABLE, JVMTI_EVENT_GARBAGE_COLLECTION_FINISH, NULL);
+        if (err == JVMTI_ERROR_NONE) {
+            g_symbol_cache_enabled = 1;
+            rasplog("Symbol cache invalidated on every GC finish");
+        }
+    }
+
     err = (*g_jvmti)->SetEventNotificationMode(g_jvmti, JVMTI_ENABLE, JVMTI_EVENT_NATIVE_METHOD_BIND, NULL);
     if (err != JVMTI_ERROR_NONE) {
         rasplog("SetEventNotificationMode failed: %d", err);
     }
 
+    g_initialized = 1;
     rasplog("JVMTI agent loaded OK");
     return JNI_OK;
 }
@@ -473,4 +1105,5 @@ JNIEXPORT void JNICALL Agent_OnUnload(JavaVM *vm) {
     g_orig_ProcessImpl_create = NULL;
     g_orig_UNIXProcess_forkAndExec = NULL;
     g_jvmti = NULL;
+    rasplog_shutdown();
 }
\ No newline at end of file
@@ -1,74 +1,35 @@
 package com.butler;
 
+import com.butler.helper.AttachApiHelper;
+import com.butler.helper.FleetAttachHelper;
 import com.butler.helper.JarFileHelper;
 import com.butler.Transformer.CommandExecTransformer;
 import com.butler.helper.TargetClassHelper;
+import com.butler.metrics.RaspMetrics;
+import com.butler.util.RaspMode;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.lang.instrument.Instrumentation;
-import java.lang.management.ManagementFactory;
-import java.lang.reflect.Method;
-import java.net.URL;
-import java.net.URLClassLoader;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import static com.butler.helper.JarFileHelper.getLocalJarPath;
 
 public class AgentMain {
     public static final String ClassName = "java.lang.ProcessImpl";
 
-    private static Class virtualMachineClass;
-    private static Class virtualMachineDescriptorClass;
-    private static List<Object> vms;
     public static boolean LLM_ANALYZE_START;
     public static String QWEN_API_KEY = "";
 
+    // Attach API 由 AttachApiHelper 在命令行 main 中按需加载，agentmain / premain 不做任何 Attach 相关工作
 
-    static {
-        try {
-            StringBuilder toolsJarPath = new StringBuilder();
-            toolsJarPath.append(System.getProperty("java.home"))
-                    .append(File.separator).append("..")
-                    .append(File.separator).append("lib")
-                    .append(File.separator).append("tools.jar");
-
-            File toolsJarFile = new File(toolsJarPath.toString());
-
-            if (!toolsJarFile.exists() || !toolsJarFile.isFile()) {
-                InputStream jarStream = AgentMain.class.getClassLoader().getResourceAsStream("tools.jar");
-                toolsJarFile = File.createTempFile("tools", ".jar");
-
-                FileOutputStream out = null;
-
-                try {
-                    out = new FileOutputStream(toolsJarFile);
+    /** Transformer 已注册，再次 attach 只更新运行模式 */
+    private static volatile boolean installed;
 
-                    byte[] buffer = new byte[1024];
-                    int bytesRead;
-
-                    while ((bytesRead = jarStream.read(buffer)) != -1)
-                        out.write(buffer, 0, bytesRead);
-                } finally {
-                    if (out != null) {
-                        out.close();
-                    }
-                }
-            }
-
-            URL url = toolsJarFile.toURI().toURL();
-            URLClassLoader urlClassLoader = new URLClassLoader(new URL[] { url });
-            virtualMachineClass = urlClassLoader.loadClass(
-                    "com.sun.tools.attach.VirtualMachine");
-            virtualMachineDescriptorClass = urlClassLoader.loadClass(
-                    "com.sun.tools.attach.VirtualMachineDescriptor");
-            vms = (List<Object>) virtualMachineClass.getMethod("list",
-                    new Class[0]).invoke(virtualMachineClass, new Object[0]);
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-    }
+    /** 安装完成后在目标 JVM 中设置的系统属性，批量 attach 据此判断是否只需切换模式 */
+    public static final String INSTALLED_PROPERTY = "rasp.agent.installed";
 
     public static void main(String[] args) throws Exception {
         // 没有参数：列出所有 JVM
@@ -92,21 +53,29 @@ public class AgentMain {
             infoLog("已设置通义大模型 API Key: sk-***********" );
         }
         // 主逻辑分支：PID 或 displayName
+        List<String> targetPids;
         if (targetPid.equalsIgnoreCase("all")) {
-            for (String jvmProcessId : getAllJvmPids())
-                attachAgentToTargetJvm(jvmProcessId);
+            targetPids = getAllJvmPids();
         } else {
             try {
                 Integer.parseInt(targetPid);
-                attachAgentToTargetJvm(targetPid);
+                targetPids = Collections.singletonList(targetPid);
             } catch (NumberFormatException e) {
-                for (String jvmProcessId : getJvmPidsByDisplayName(targetPid))
-                    attachAgentToTargetJvm(jvmProcessId);
+                targetPids = getJvmPidsByDisplayName(targetPid);
             }
         }
+        if (!attachAgentToTargetJvms(targetPids)) {
+            System.exit(1);
+        }
     }
 
     public static void agentmain(String agentArgs, Instrumentation ins) {
+        // 已安装时带 mode= 参数再次 attach：只切换运行模式，不重复注册 Transformer、不 retransform
+        if (installed && parseAgentArgs(agentArgs).containsKey("mode")) {
+            applyAgentArgs(agentArgs);
+            return;
+        }
+
         //路径追加到了启动类加载器的classpath中。此时启动类加载器收到类加载委派任务时，就能通过该classpath加载到rasp.jar的所有类了
         try {
             JarFileHelper.addJarToBootstrap(ins);
@@ -114,6 +83,11 @@ public class AgentMain {
             failLog("Failed to initialize, will continue without security protection.");
             throw new RuntimeException(e);
         }
+        // RaspMode 必须在追加到启动类路径之后才加载，保证与注入字节码读取的是同一个类
+        applyAgentArgs(agentArgs);
+
+        // 注册运行指标 MBean
+        RaspMetrics.register();
 
         // 注册ProcessBuilderTransformer
         ins.addTransformer(new CommandExecTransformer(ins),true);
@@ -129,11 +103,15 @@ public class AgentMain {
                 }
             }
         }
+        installed = true;
+        System.setProperty(INSTALLED_PROPERTY, "true");
     }
 
     public static void premain(String agentArgs, Instrumentation inst) {
         try {
             JarFileHelper.addJarToBootstrap(inst);
+            applyAgentArgs(agentArgs);
+            RaspMetrics.register();
 
             inst.addTransformer(new CommandExecTransformer(inst), true);
 
@@ -150,7 +128,9 @@ public class AgentMain {
                 }
             }
 
-            successLog("Premain: Java layer protection active");
+            installed = true;
+            System.setProperty(INSTALLED_PROPERTY, "true");
+            successLog("Premain: Java layer protection active (mode=" + RaspMode.getName() + ")");
         } catch (Exception e) {
             failLog("Premain: initialization failed");
             e.printStackTrace();
@@ -158,28 +138,48 @@ public class AgentMain {
     }
 
 
+    /**
+     * 解析 agent 参数：逗号分隔的 key=value，例如 mode=monitor
+     */
+    public static Map<String, String> parseAgentArgs(String agentArgs) {
+        Map<String, String> args = new HashMap<String, String>();
+        if (agentArgs == null) {
+            return args;
+        }
+        for (String kv : agentArgs.split(",")) {
+            int eq = kv.indexOf('=');
+            if (eq > 0) {
+                args.put(kv.substring(0, eq).trim(), kv.substring(eq + 1).trim());
+            }
+        }
+        return args;
+    }
+
+    private static void applyAgentArgs(String agentArgs) {
+        String mode = parseAgentArgs(agentArgs).get("mode");
+        if (mode != null) {
+            try {
+                RaspMode.set(mode);
+            } catch (IllegalArgumentException e) {
+                failLog(e.getMessage());
+            }
+        }
+    }
+
     public static List<String> getAllJvmPids() throws Exception {
         List<String> pids = new ArrayList<String>();
 
-        for (Object vm : vms) {
-            Method getId = virtualMachineDescriptorClass.getDeclaredMethod("id",
-                    new Class[0]);
-            String id = (String) getId.invoke(vm, new Object[0]);
-            pids.add(id);
+        for (Object vm : AttachApiHelper.listVirtualMachines()) {
+            pids.add(AttachApiHelper.getId(vm));
         }
 
         return pids;
     }
 
     public static void listAllJvmPids() throws Exception {
-        for (Object vm : vms) {
-            Method displayNameMethod = virtualMachineDescriptorClass.getMethod("displayName",
-                    new Class[0]);
-            String displayName = (String) displayNameMethod.invoke(vm,
-                    new Object[0]);
-            Method getId = virtualMachineDescriptorClass.getDeclaredMethod("id",
-                    new Class[0]);
-            String id = (String) getId.invoke(vm, new Object[0]);
+        for (Object vm : AttachApiHelper.listVirtualMachines()) {
+            String displayName = AttachApiHelper.getDisplayName(vm);
+            String id = AttachApiHelper.getId(vm);
             infoLog(String.format("Found pid %s [%s]",
                     new Object[] { id, displayName }));
         }
@@ -189,78 +189,41 @@ public class AgentMain {
             throws Exception {
         List<String> pids = new ArrayList<String>();
 
-        for (Object vm : vms) {
-            Method displayNameMethod = virtualMachineDescriptorClass.getMethod("displayName",
-                    new Class[0]);
-            String currentDisplayName = (String) displayNameMethod.invoke(vm,
-                    new Object[0]);
+        for (Object vm : AttachApiHelper.listVirtualMachines()) {
+            String currentDisplayName = AttachApiHelper.getDisplayName(vm);
             System.out.println(currentDisplayName);
             System.out.println(displayName);
             System.out.println();
 
             if (currentDisplayName.toLowerCase()
                     .contains(displayName.toLowerCase())) {
-                Method getId = virtualMachineDescriptorClass.getDeclaredMethod("id",
-                        new Class[0]);
-                String id = (String) getId.invoke(vm, new Object[0]);
-                pids.add(id);
+                pids.add(AttachApiHelper.getId(vm));
             }
         }
 
         return pids;
     }
 
-    private static void attachAgentToTargetJvm(String targetPID)
-            throws Exception {
+    /**
+     * 并发 attach Java Agent 与 Native Agent，输出 JSON 报告
+     * @return 是否全部成功
+     */
+    private static boolean attachAgentToTargetJvms(List<String> targetPids) throws IOException {
         String agentFilePath = (new File(AgentMain.class.getProtectionDomain()
                 .getCodeSource()
                 .getLocation()
                 .getPath())).getCanonicalPath();
         infoLog("Current agent path: " + agentFilePath);
 
-        File agentFile = new File(agentFilePath);
-        String currentPid = getCurrentPID();
-
-        if (targetPID.equals(currentPid)) {
-            infoLog("Skipping attaching to self");
-        } else {
-            try {
-                infoLog("Attaching to target JVM with PID: " + targetPID);
-
-                Object jvm = virtualMachineClass.getMethod("attach",new Class[] { String.class }).invoke(null,new Object[] { targetPID });
-                Method loadAgent = virtualMachineClass.getDeclaredMethod("loadAgent",new Class[] { String.class });
-                loadAgent.invoke(jvm,new Object[] { agentFile.getAbsolutePath() });
-
-                Method detach = virtualMachineClass.getDeclaredMethod("detach",new Class[0]);
-                detach.invoke(jvm, new Object[0]);
-                successLog("[JavaAgent] Attached to target JVM and loaded agent successfully");
-
-                // ========== Native Agent attach ==========
-                String os = System.getProperty("os.name").toLowerCase();
-                String ext = os.contains("win") ? ".dll" : ".so";
-                // 获取 jar 包所在路径，并拼接 native 目录
-                String localJarPath = getLocalJarPath();
-                String nativePath = new File(localJarPath).getParentFile().getAbsolutePath();
-                File nativeAgentFile = new File(nativePath + File.separator + "native" + File.separator + "librasp_agent" + ext);
-                // 开始attach
-                if (!nativeAgentFile.exists()) {
-                    failLog("[NativeAgent] Native agent file not found: " + nativeAgentFile.getAbsolutePath());
-                } else {
-                    // 与 Java Agent 相同方式进行 attach + loadAgentPath
-                    Object jvm2 = virtualMachineClass.getMethod("attach", String.class).invoke(null, targetPID);
-                    Method loadAgentPath = virtualMachineClass.getDeclaredMethod("loadAgentPath", String.class);
-                    loadAgentPath.invoke(jvm2, nativeAgentFile.getAbsolutePath());
-                    detach.invoke(jvm2);
-                    successLog("[NativeAgent] Attached to target JVM and loaded native agent successfully");
-                }
-            } catch (Exception e) {
-                throw new RuntimeException(e);
-            }
-        }
-    }
+        // 获取 jar 包所在路径，并拼接 native 目录
+        String os = System.getProperty("os.name").toLowerCase();
+        String ext = os.contains("win") ? ".dll" : ".so";
+        String nativePath = new File(getLocalJarPath()).getParentFile().getAbsolutePath();
+        File nativeAgentFile = new File(nativePath + File.separator + "native" + File.separator + "librasp_agent" + ext);
 
-    private static String getCurrentPID() {
-        return ManagementFactory.getRuntimeMXBean().getName().split("@")[0];
+        List<FleetAttachHelper.Result> results = FleetAttachHelper.attachAll(targetPids, agentFilePath, nativeAgentFile);
+        FleetAttachHelper.report(results);
+        return FleetAttachHelper.allSucceeded(results);
     }
 
     public static void infoLog(String message) {
@@ -1,29 +1,53 @@
 package com.butler.Transformer;
 
-import com.butler.asm.UNIXProcessClassVisitor;
+import com.butler.asm.HookClassVisitor;
 import com.butler.helper.RaspLoggerHelper;
-import com.butler.asm.ProcessClassVisitor;
+import com.butler.hook.HookRegistry;
+import com.butler.hook.HookSpec;
 import org.objectweb.asm.ClassReader;
-import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.Opcodes;
-import java.io.ByteArrayInputStream;
 import java.lang.instrument.ClassFileTransformer;
 import java.lang.instrument.IllegalClassFormatException;
 import java.lang.instrument.Instrumentation;
 import java.security.ProtectionDomain;
-import static com.butler.helper.TargetClassHelper.PROCESSIMPL;
-import static com.butler.helper.TargetClassHelper.UNIXPROCESS;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
- * 负责在加载 java.lang.ProcessImpl / java.lang.UNIXProcess 时修改字节码
+ * 负责在加载 {@link HookRegistry} 中登记的目标类（java.lang.ProcessImpl / java.lang.UNIXProcess）时修改字节码
+ *
+ * 每个加载的类只做一次按内部名的哈希查找，非目标类返回 null（不改写，JVM 不会复制字节码）。
+ * 当前 JDK 中存在的目标类全部改写完成后，Transformer 通过 Instrumentation.removeTransformer 注销自己，
+ * 之后的类加载不再经过 RASPSimple。
+ *
+ * 注意：注销后若其他 agent 对目标类执行 retransform，JVM 会从原始字节码重新生成类，Hook 将丢失；
+ * 与这类 agent 共存时用 -Drasp.transformer.retire=false 保留 Transformer。
  */
 public class CommandExecTransformer implements ClassFileTransformer {
 
     private final Instrumentation inst;
+    private final HookRegistry registry;
+    /** 尚未改写的目标类（只包含当前 JDK 中存在的类） */
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+    private final boolean retire = Boolean.parseBoolean(System.getProperty("rasp.transformer.retire", "true"));
+    private final AtomicBoolean retired = new AtomicBoolean();
 
     public CommandExecTransformer(Instrumentation inst) {
+        this(inst, HookRegistry.getDefault());
+    }
+
+    public CommandExecTransformer(Instrumentation inst, HookRegistry registry) {
         this.inst = inst;
+        this.registry = registry;
+        for (String className : registry.getClassNames()) {
+            // UNIXProcess 只存在于 JDK 8 的 Linux / macOS，不存在的类永远不会加载，不能等它
+            if (ClassLoader.getSystemResource(className + ".class") != null) {
+                pending.add(className);
+            }
+        }
     }
 
     @Override
@@ -32,28 +56,24 @@ public class CommandExecTransformer implements ClassFileTransformer {
                             ProtectionDomain protectionDomain,
                             byte[] classfileBuffer) throws IllegalClassFormatException {
 
-        // 如果不是我们关注的目标类则直接返回原字节码
-        if (!PROCESSIMPL.equals(className) && !UNIXPROCESS.equals(className)) {
-            return classfileBuffer;
+        // 如果不是我们关注的目标类则不改写
+        List<HookSpec> specs = className == null ? null : registry.get(className);
+        if (specs == null) {
+            return null;
         }
 
         RaspLoggerHelper.info("Using ASM to patch class: " + className);
 
         try {
-            ClassReader cr = new ClassReader(new ByteArrayInputStream(classfileBuffer));
+            ClassReader cr = new ClassReader(classfileBuffer);
             ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
-
-            // 根据类名创建合适的Visitor
-            ClassVisitor cv = createVisitorFor(className, Opcodes.ASM9, cw, loader);
-            if (cv == null) {
-                RaspLoggerHelper.warn("No visitor found for class: " + className);
-                return classfileBuffer;
-            }
+            HookClassVisitor cv = new HookClassVisitor(Opcodes.ASM9, cw, specs);
 
             cr.accept(cv, ClassReader.SKIP_FRAMES);
 
             byte[] modified = cw.toByteArray();
-            RaspLoggerHelper.info("ASM patch success for " + className);
+            RaspLoggerHelper.info("ASM patch success for " + className + " hooks=" + cv.getPatchedMethods());
+            markPatched(className);
             return modified;
 
         } catch (Throwable t) {
@@ -61,21 +81,19 @@ public class CommandExecTransformer implements ClassFileTransformer {
             t.printStackTrace();
         }
 
-        return classfileBuffer;
+        return null;
     }
 
     /**
-     * 根据类名返回对应的 ClassVisitor。
-     * - ProcessImpl → 注入 create/start 检测逻辑
-     * - UNIXProcess → 注入构造函数检测逻辑
+     * 记录目标类已改写，全部完成后注销 Transformer
      */
-    private ClassVisitor createVisitorFor(String className, int api, ClassVisitor cv, ClassLoader loader) {
-        if (PROCESSIMPL.equals(className)) {
-            return new ProcessClassVisitor(api, cv);
+    private void markPatched(String className) {
+        if (!pending.remove(className) || !pending.isEmpty() || !retire || inst == null) {
+            return;
         }
-        if (UNIXPROCESS.equals(className)) {
-            return new UNIXProcessClassVisitor(api, cv);
+        if (retired.compareAndSet(false, true)) {
+            inst.removeTransformer(this);
+            RaspLoggerHelper.info("All hook targets patched, transformer removed");
         }
-        return null;
     }
 }
@@ -0,0 +1,40 @@
+package com.butler.asm;
+
+import com.butler.hook.HookSpec;
+import java.util.List;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.MethodVisitor;
+
+/**
+ * 扫描目标类中的所有方法，为匹配 {@link HookSpec} 的方法套上 {@link HookMethodAdapter}
+ */
+public class HookClassVisitor extends ClassVisitor {
+    private final List<HookSpec> specs;
+    private int patchedMethods;
+
+    public HookClassVisitor(int api, ClassVisitor classVisitor, List<HookSpec> specs) {
+        super(api, classVisitor);
+        this.specs = specs;
+    }
+
+    @Override
+    public MethodVisitor visitMethod(int access, String name, String descriptor,
+                                     String signature, String[] exceptions) {
+        MethodVisitor mv = super.visitMethod(access, name, descriptor, signature, exceptions);
+
+        // 同一方法匹配多个 Hook 点时按注册顺序依次插入
+        for (int i = specs.size() - 1; i >= 0; i--) {
+            HookSpec spec = specs.get(i);
+            if (spec.matches(name, descriptor)) {
+                mv = new HookMethodAdapter(api, mv, access, name, descriptor, spec);
+                patchedMethods++;
+            }
+        }
+        return mv;
+    }
+
+    /** 插入的 advice 个数 */
+    public int getPatchedMethods() {
+        return patchedMethods;
+    }
+}
@@ -0,0 +1,75 @@
+package com.butler.asm;
+
+import com.butler.helper.RaspLoggerHelper;
+import com.butler.hook.HookSpec;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.commons.AdviceAdapter;
+
+/**
+ * 通用入口 advice：在方法开头按 {@link HookSpec} 加载参数并调用静态检测方法
+ *
+ * 构造器由 AdviceAdapter 保证插入在 super() 之后。参数下标越界或为基本类型时传 null。
+ * 检测调用前先读取 {@link com.butler.util.RaspMode#MODE}，为 OFF（0）时跳过，模式切换无需 retransform。
+ * 目标类以 SKIP_FRAMES 读入、不重新计算栈帧，与改写前一样依赖启动类不做字节码校验。
+ */
+public class HookMethodAdapter extends AdviceAdapter {
+    private final HookSpec spec;
+    private final String methodName;
+    private final String methodDesc;
+    private final boolean isStatic;
+
+    public HookMethodAdapter(int api, MethodVisitor mv, int access, String name, String desc, HookSpec spec) {
+        super(api, mv, access, name, desc);
+        this.spec = spec;
+        this.methodName = name;
+        this.methodDesc = desc;
+        this.isStatic = (access & ACC_STATIC) != 0;
+    }
+
+    @Override
+    protected void onMethodEnter() {
+        // if (RaspMode.MODE != OFF) { check(args...); }
+        Label skip = new Label();
+        mv.visitFieldInsn(GETSTATIC, "com/butler/util/RaspMode", "MODE", "I");
+        mv.visitJumpInsn(IFEQ, skip);
+
+        Type[] argTypes = Type.getArgumentTypes(methodDesc);
+        int checkArity = Type.getArgumentTypes(spec.getCheckDescriptor()).length;
+        int[] indexes = spec.getArgIndexes();
+
+        for (int i = 0; i < checkArity; i++) {
+            int index = i < indexes.length ? indexes[i] : -1;
+            if (index >= 0 && index < argTypes.length && isReference(argTypes[index])) {
+                mv.visitVarInsn(ALOAD, slotOf(argTypes, index));
+            } else {
+                if (index >= 0) {
+                    RaspLoggerHelper.warn("Hook argument " + index + " unavailable in " + methodName + methodDesc
+                            + ", passing null: " + spec);
+                }
+                mv.visitInsn(ACONST_NULL);
+            }
+        }
+
+        mv.visitMethodInsn(INVOKESTATIC,
+                spec.getCheckOwner(),
+                spec.getCheckName(),
+                spec.getCheckDescriptor(),
+                false);
+        mv.visitLabel(skip);
+    }
+
+    /** 参数对应的局部变量槽位：实例方法从 1 开始（0 是 this），long / double 占两个槽位 */
+    private int slotOf(Type[] argTypes, int index) {
+        int slot = isStatic ? 0 : 1;
+        for (int i = 0; i < index; i++) {
+            slot += argTypes[i].getSize();
+        }
+        return slot;
+    }
+
+    private static boolean isReference(Type type) {
+        return type.getSort() == Type.OBJECT || type.getSort() == Type.ARRAY;
+    }
+}
@@ -0,0 +1,269 @@
+package com.butler.helper;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Calendar;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 异步日志追加器
+ *
+ * 业务线程只把 级别/时间/消息 写入无锁环形缓冲区（多生产者 CAS 抢占序号，单消费者），
+ * 由后台写线程统一格式化并批量写盘：缓冲内容达到 {@link #FLUSH_BYTES} 或距上次写盘超过 flushInterval 时才写一次，
+ * 格式化使用复用的 StringBuilder / ByteBuffer，时间戳按秒缓存。
+ *
+ * 缓冲区满时的策略：
+ * - DROP  丢弃新的 INFO 日志并计数（默认，不阻塞进程启动线程）
+ * - BLOCK 等待写线程腾出空间
+ * 两种策略下 INFO 以外的级别（阻断命令等安全事件的 WARNING / SEVERE）都不丢弃，缓冲区满时等待写线程。
+ */
+public class AsyncLogAppender {
+
+    public enum OverflowPolicy {
+        DROP, BLOCK
+    }
+
+    private static final int FLUSH_BYTES = 8 * 1024;
+    private static final String DROPPABLE_LEVEL = "INFO";
+
+    private final int mask;
+    private final String[] levels;
+    private final String[] messages;
+    private final Throwable[] throwables;
+    private final long[] millis;
+    /** 延迟解码的参数块（UNIXProcess prog / argBlock），由写线程拼接在消息之后 */
+    private final byte[][] progs;
+    private final byte[][] argBlocks;
+    /** 槽位发布序号：值为 seq + 1 表示序号 seq 的数据已写入完成 */
+    private final AtomicLongArray published;
+
+    /** 下一个可抢占的序号（生产者） */
+    private final AtomicLong tail = new AtomicLong();
+    /** 下一个待消费的序号（消费者） */
+    private volatile long head;
+
+    private final FileChannel file;
+    private final boolean console;
+    private final OverflowPolicy policy;
+    private final long flushIntervalNanos;
+
+    private final LongAdder dropped = new LongAdder();
+
+    /* 以下字段只在持有 this 锁的写线程/退出钩子中访问 */
+    private final StringBuilder text = new StringBuilder(FLUSH_BYTES * 2);
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final ByteBuffer bytes = ByteBuffer.allocate(FLUSH_BYTES * 4);
+    private final Calendar calendar = Calendar.getInstance();
+    private long cachedSecond = -1;
+    private String cachedTimestamp = "";
+    private long lastFlushNanos = System.nanoTime();
+
+    private final Thread writer;
+
+    public AsyncLogAppender(Path logPath, int capacity, OverflowPolicy policy,
+                            long flushIntervalMillis, boolean console) throws IOException {
+        int size = Integer.highestOneBit(Math.max(2, capacity));
+        this.mask = size - 1;
+        this.levels = new String[size];
+        this.messages = new String[size];
+        this.throwables = new Throwable[size];
+        this.millis = new long[size];
+        this.progs = new byte[size][];
+        this.argBlocks = new byte[size][];
+        this.published = new AtomicLongArray(size);
+        this.file = FileChannel.open(logPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        this.policy = policy;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+        this.console = console;
+
+        this.writer = new Thread(this::runWriter, "RASPSimple-LogWriter");
+        this.writer.setDaemon(true);
+        this.writer.start();
+        // JVM 退出前把缓冲区中的日志写完，阻断事件往往就发生在进程退出前
+        Runtime.getRuntime().addShutdownHook(new Thread(this::drainAndFlush, "RASPSimple-LogShutdown"));
+    }
+
+    /**
+     * 追加一条日志，不做任何格式化
+     * @return 是否写入缓冲区（DROP 策略下缓冲区满时 INFO 日志返回 false）
+     */
+    public boolean append(String level, String message, Throwable thrown) {
+        return append(level, message, thrown, null, null);
+    }
+
+    /**
+     * 追加一条日志，prog / argBlock 原样保存，由写线程解码后（'\0' 替换为空格）拼接在 message 之后。
+     * 调用线程不做解码和拼接，也不分配内存。
+     */
+    public boolean append(String level, String message, Throwable thrown, byte[] prog, byte[] argBlock) {
+        long seq;
+        while (true) {
+            seq = tail.get();
+            if (seq - head > mask) {
+                if (policy == OverflowPolicy.DROP && DROPPABLE_LEVEL.equals(level)) {
+                    dropped.increment();
+                    return false;
+                }
+                LockSupport.unpark(writer);
+                Thread.yield();
+                continue;
+            }
+            if (tail.compareAndSet(seq, seq + 1)) {
+                break;
+            }
+        }
+        int idx = (int) (seq & mask);
+        levels[idx] = level;
+        messages[idx] = message;
+        throwables[idx] = thrown;
+        progs[idx] = prog;
+        argBlocks[idx] = argBlock;
+        millis[idx] = System.currentTimeMillis();
+        published.lazySet(idx, seq + 1);
+        return true;
+    }
+
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    private void runWriter() {
+        while (true) {
+            int n;
+            // 只有写线程和退出钩子会进入，锁基本无竞争
+            synchronized (this) {
+                n = drain();
+                long now = System.nanoTime();
+                if (text.length() >= FLUSH_BYTES || (text.length() > 0 && now - lastFlushNanos >= flushIntervalNanos)) {
+                    flush();
+                }
+            }
+            if (n == 0) {
+                LockSupport.parkNanos(this, Math.max(1, flushIntervalNanos / 4));
+            }
+        }
+    }
+
+    /** 消费已发布的日志并格式化到 text，返回条数 */
+    private int drain() {
+        int n = 0;
+        long h = head;
+        while (true) {
+            int idx = (int) (h & mask);
+            if (published.get(idx) != h + 1) {
+                break;
+            }
+            format(levels[idx], messages[idx], throwables[idx], millis[idx], progs[idx], argBlocks[idx]);
+            levels[idx] = null;
+            messages[idx] = null;
+            throwables[idx] = null;
+            progs[idx] = null;
+            argBlocks[idx] = null;
+            h++;
+            head = h;
+            n++;
+            if (text.length() >= FLUSH_BYTES) {
+                flush();
+            }
+        }
+        return n;
+    }
+
+    /** 与原 SimpleFormatter 输出一致：[yyyy-MM-dd HH:mm:ss] [LEVEL] message */
+    private void format(String level, String message, Throwable thrown, long time, byte[] prog, byte[] argBlock) {
+        long second = time / 1000;
+        if (second != cachedSecond) {
+            calendar.setTimeInMillis(time);
+            cachedTimestamp = String.format(Locale.ROOT, "%1$tF %1$tT", calendar);
+            cachedSecond = second;
+        }
+        text.append('[').append(cachedTimestamp).append("] [").append(level);
+        for (int i = level.length(); i < 5; i++) {
+            text.append(' ');
+        }
+        text.append("] ").append(message);
+        if (prog != null || argBlock != null) {
+            appendBlock(prog);
+            text.append(' ');
+            appendBlock(argBlock);
+        }
+        text.append(' ').append(System.lineSeparator());
+        if (thrown != null) {
+            StringWriter sw = new StringWriter();
+            thrown.printStackTrace(new PrintWriter(sw));
+            text.append(sw);
+        }
+    }
+
+    private void appendBlock(byte[] block) {
+        if (block == null) {
+            return;
+        }
+        int len = block.length;
+        while (len > 0 && block[len - 1] == 0) {
+            len--;
+        }
+        String decoded = new String(block, 0, len, StandardCharsets.UTF_8);
+        text.append(decoded.replace('\0', ' '));
+    }
+
+    private void flush() {
+        if (text.length() == 0) {
+            return;
+        }
+        if (console) {
+            System.err.print(text);
+        }
+        CharBuffer chars = CharBuffer.wrap(text);
+        encoder.reset();
+        try {
+            while (true) {
+                CoderResult result = encoder.encode(chars, bytes, true);
+                writeBytes();
+                if (result.isUnderflow()) {
+                    encoder.flush(bytes);
+                    writeBytes();
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            bytes.clear();
+            text.setLength(0);
+            lastFlushNanos = System.nanoTime();
+        }
+    }
+
+    private void writeBytes() throws IOException {
+        bytes.flip();
+        while (bytes.hasRemaining()) {
+            file.write(bytes);
+        }
+        bytes.clear();
+    }
+
+    private void drainAndFlush() {
+        synchronized (this) {
+            drain();
+            flush();
+        }
+    }
+}
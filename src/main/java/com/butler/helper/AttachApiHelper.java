@@ -0,0 +1,266 @@
+package com.butler.helper;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * Attach API 加载工具类（仅供命令行 main 使用）
+ *
+ * 目标 JVM 中的 agentmain / premain 不做任何 Attach 相关的工作，只有第一次调用本类方法时才解析 Attach API：
+ * - JDK 9+ 的 jdk.attach 模块（或 JDK 8 classpath 上已有的 tools.jar）直接由系统类加载器加载；
+ * - 否则使用 ${java.home}/../lib/tools.jar；
+ * - 仍找不到时释放 jar 内打包的 tools.jar 到当前用户私有的临时目录，文件名带内容哈希，校验通过后多次运行复用同一个文件。
+ *
+ * 反射得到的 Method 在加载时解析一次并缓存，并发 attach 时各线程共用。
+ */
+public class AttachApiHelper {
+
+    private static final String VIRTUAL_MACHINE = "com.sun.tools.attach.VirtualMachine";
+    private static final String VIRTUAL_MACHINE_DESCRIPTOR = "com.sun.tools.attach.VirtualMachineDescriptor";
+    private static final String BUNDLED_TOOLS_JAR = "tools.jar";
+    private static final Set<PosixFilePermission> GROUP_OTHER_PERMISSIONS = EnumSet.complementOf(EnumSet.of(
+            PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE, PosixFilePermission.OWNER_EXECUTE));
+
+    /** volatile 写在最后，读到非 null 时其余字段均已就绪 */
+    private static volatile Class<?> virtualMachineClass;
+    private static Class<?> virtualMachineDescriptorClass;
+    private static Method listMethod;
+    private static Method idMethod;
+    private static Method displayNameMethod;
+    private static Method attachMethod;
+    private static Method loadAgentMethod;
+    private static Method loadAgentWithOptionsMethod;
+    private static Method loadAgentPathMethod;
+    private static Method detachMethod;
+    private static Method getSystemPropertiesMethod;
+
+    /**
+     * 当前机器上的所有 JVM（VirtualMachine.list()）
+     */
+    @SuppressWarnings("unchecked")
+    public static List<Object> listVirtualMachines() throws Exception {
+        ensureLoaded();
+        return (List<Object>) invoke(listMethod, null);
+    }
+
+    public static String getId(Object descriptor) throws Exception {
+        ensureLoaded();
+        return (String) invoke(idMethod, descriptor);
+    }
+
+    public static String getDisplayName(Object descriptor) throws Exception {
+        ensureLoaded();
+        return (String) invoke(displayNameMethod, descriptor);
+    }
+
+    /**
+     * VirtualMachine.attach(pid)，返回的会话用完后必须 {@link #detach(Object)}
+     */
+    public static Object attach(String pid) throws Exception {
+        ensureLoaded();
+        return invoke(attachMethod, null, pid);
+    }
+
+    public static void loadAgent(Object vm, String agentPath) throws Exception {
+        invoke(loadAgentMethod, vm, agentPath);
+    }
+
+    /**
+     * @param options 传给 agentmain 的 agentArgs
+     */
+    public static void loadAgent(Object vm, String agentPath, String options) throws Exception {
+        invoke(loadAgentWithOptionsMethod, vm, agentPath, options);
+    }
+
+    public static void loadAgentPath(Object vm, String agentPath) throws Exception {
+        invoke(loadAgentPathMethod, vm, agentPath);
+    }
+
+    /** 目标 JVM 的系统属性 */
+    public static Properties getSystemProperties(Object vm) throws Exception {
+        return (Properties) invoke(getSystemPropertiesMethod, vm);
+    }
+
+    public static void detach(Object vm) throws Exception {
+        invoke(detachMethod, vm);
+    }
+
+    /** 反射调用，抛出目标方法自身的异常（AttachNotSupportedException / AgentLoadException 等） */
+    private static Object invoke(Method method, Object target, Object... args) throws Exception {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        }
+    }
+
+    private static void ensureLoaded() throws IOException, ClassNotFoundException {
+        if (virtualMachineClass != null) {
+            return;
+        }
+        synchronized (AttachApiHelper.class) {
+            if (virtualMachineClass != null) {
+                return;
+            }
+            ClassLoader loader = resolveLoader();
+            Class<?> vmClass = loader.loadClass(VIRTUAL_MACHINE);
+            virtualMachineDescriptorClass = loader.loadClass(VIRTUAL_MACHINE_DESCRIPTOR);
+            try {
+                listMethod = vmClass.getMethod("list");
+                idMethod = virtualMachineDescriptorClass.getMethod("id");
+                displayNameMethod = virtualMachineDescriptorClass.getMethod("displayName");
+                attachMethod = vmClass.getMethod("attach", String.class);
+                loadAgentMethod = vmClass.getMethod("loadAgent", String.class);
+                loadAgentWithOptionsMethod = vmClass.getMethod("loadAgent", String.class, String.class);
+                loadAgentPathMethod = vmClass.getMethod("loadAgentPath", String.class);
+                detachMethod = vmClass.getMethod("detach");
+                getSystemPropertiesMethod = vmClass.getMethod("getSystemProperties");
+            } catch (NoSuchMethodException e) {
+                throw new ClassNotFoundException("Incompatible Attach API: " + e.getMessage(), e);
+            }
+            virtualMachineClass = vmClass;
+        }
+    }
+
+    private static ClassLoader resolveLoader() throws IOException {
+        ClassLoader system = ClassLoader.getSystemClassLoader();
+        try {
+            Class.forName(VIRTUAL_MACHINE, false, system);
+            return system;
+        } catch (ClassNotFoundException ignored) {
+            // JDK 8 且 tools.jar 不在 classpath
+        }
+
+        File toolsJar = new File(System.getProperty("java.home") + File.separator + ".."
+                + File.separator + "lib" + File.separator + "tools.jar");
+        if (!toolsJar.isFile()) {
+            toolsJar = extractBundledToolsJar();
+        }
+        return new URLClassLoader(new URL[]{toolsJar.toURI().toURL()});
+    }
+
+    /**
+     * 释放 jar 内打包的 tools.jar。
+     *
+     * 释放到 ${java.io.tmpdir}/RASPSimple-${user.name}：仅当前用户可访问（0700），不跟随符号链接，
+     * 其他本地用户无法预先放置同名 jar。文件名为内容哈希，复用前重新计算已有文件的哈希，不一致时重新释放；
+     * 先写入临时文件再原子改名，其他进程不会读到写了一半的文件。
+     * 无法建立私有目录时（非 POSIX 文件系统、目录属于其他用户等）退回为每次释放到新的临时文件。
+     */
+    private static File extractBundledToolsJar() throws IOException {
+        URL resource = AttachApiHelper.class.getClassLoader().getResource(BUNDLED_TOOLS_JAR);
+        if (resource == null) {
+            throw new IOException("tools.jar not found in JDK lib or agent jar, Attach API unavailable");
+        }
+        String hash;
+        try (InputStream in = resource.openStream()) {
+            hash = sha256(in);
+        }
+
+        Path dir = privateDirectory();
+        if (dir == null) {
+            Path tmp = Files.createTempFile("RASPSimple-tools", ".jar");
+            tmp.toFile().deleteOnExit();
+            try (InputStream in = resource.openStream()) {
+                Files.copy(in, tmp, StandardCopyOption.REPLACE_EXISTING);
+            }
+            return tmp.toFile();
+        }
+
+        // 取前 16 个十六进制字符足以区分不同版本的 tools.jar，完整哈希用于校验已有文件
+        Path target = dir.resolve("RASPSimple-tools-" + hash.substring(0, 16) + ".jar");
+        if (Files.isRegularFile(target, LinkOption.NOFOLLOW_LINKS)) {
+            try (InputStream in = Files.newInputStream(target, LinkOption.NOFOLLOW_LINKS)) {
+                if (hash.equals(sha256(in))) {
+                    return target.toFile();
+                }
+            }
+        }
+
+        Path tmp = Files.createTempFile(dir, "RASPSimple-tools", ".tmp");
+        try {
+            try (InputStream in = resource.openStream()) {
+                Files.copy(in, tmp, StandardCopyOption.REPLACE_EXISTING);
+            }
+            // 改名替换的是目录项本身，target 为符号链接时不会写到链接指向的文件
+            try {
+                Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        return target.toFile();
+    }
+
+    /**
+     * 当前用户私有的释放目录，不存在时以 0700 创建；
+     * 已存在但为符号链接、属于其他用户或组 / 其他用户有权限时返回 null
+     */
+    private static Path privateDirectory() throws IOException {
+        if (!FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            return null;
+        }
+        String user = System.getProperty("user.name");
+        Path dir = Paths.get(System.getProperty("java.io.tmpdir"), "RASPSimple-" + user);
+        try {
+            Files.createDirectory(dir, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+        } catch (FileAlreadyExistsException ignored) {
+            // 之前运行时已创建，下面校验
+        }
+        PosixFileAttributes attrs = Files.readAttributes(dir, PosixFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        Set<PosixFilePermission> permissions = attrs.permissions();
+        if (!attrs.isDirectory() || !attrs.owner().getName().equals(user)
+                || !Collections.disjoint(permissions, GROUP_OTHER_PERMISSIONS)) {
+            return null;
+        }
+        return dir;
+    }
+
+    private static String sha256(InputStream in) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        byte[] buffer = new byte[64 * 1024];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            digest.update(buffer, 0, n);
+        }
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+}
@@ -0,0 +1,290 @@
+package com.butler.helper;
+
+import com.butler.AgentMain;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.butler.AgentMain.failLog;
+import static com.butler.AgentMain.infoLog;
+import static com.butler.AgentMain.successLog;
+
+/**
+ * 批量 attach（命令行 all / displayName 模式）
+ *
+ * - 有界线程池并发 attach，单个目标超过 timeout 后记为 TIMEOUT，不再拖住其余目标；
+ *   卡死的 attach 线程无法中断时会补充一个线程，保证并发度不因挂起的目标而下降；
+ * - 每个目标只建立一次 attach 会话，依次 loadAgent（Java Agent）与 loadAgentPath（Native Agent）后 detach；
+ *   带 mode= 参数且目标已安装时只切换模式，不再加载 Native Agent；
+ * - 结束后输出一行 JSON 报告，也可写入文件。
+ *
+ * 配置（JVM 系统属性）：
+ * - rasp.attach.parallelism    并发 attach 数，默认 8
+ * - rasp.attach.timeoutSeconds 单个目标的超时时间（秒），默认 30
+ * - rasp.attach.report         JSON 报告输出路径，未设置时只打印到控制台
+ * - rasp.attach.agentArgs      传给 agentmain 的参数，例如 mode=monitor（已安装的目标只切换运行模式）
+ */
+public class FleetAttachHelper {
+
+    public enum Status {
+        OK, FAILED, TIMEOUT, SKIPPED
+    }
+
+    /**
+     * 单个目标的 attach 结果
+     */
+    public static class Result {
+        private final String pid;
+        private volatile Status status;
+        private volatile boolean javaAgent;
+        private volatile boolean nativeAgent;
+        private volatile long startNanos;
+        private volatile long millis;
+        private volatile String error;
+
+        Result(String pid) {
+            this.pid = pid;
+        }
+
+        public String getPid() {
+            return pid;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        public boolean isJavaAgent() {
+            return javaAgent;
+        }
+
+        public boolean isNativeAgent() {
+            return nativeAgent;
+        }
+
+        public long getMillis() {
+            return millis;
+        }
+
+        public String getError() {
+            return error;
+        }
+    }
+
+    private static final long POLL_MILLIS = 50;
+
+    /**
+     * 并发 attach 到所有目标
+     * @param pids        目标 JVM 的 pid
+     * @param agentPath   Java Agent jar 路径
+     * @param nativeAgent Native Agent 动态库，不存在时只加载 Java Agent
+     * @return 与 pids 顺序一致的结果
+     */
+    public static List<Result> attachAll(List<String> pids, String agentPath, File nativeAgent) {
+        int parallelism = Math.max(1, Integer.getInteger("rasp.attach.parallelism", 8));
+        long timeoutNanos = TimeUnit.SECONDS.toNanos(Math.max(1, Long.getLong("rasp.attach.timeoutSeconds", 30L)));
+        String currentPid = ManagementFactory.getRuntimeMXBean().getName().split("@")[0];
+
+        if (!nativeAgent.exists()) {
+            failLog("[NativeAgent] Native agent file not found: " + nativeAgent.getAbsolutePath());
+        }
+
+        int threads = Math.min(parallelism, Math.max(1, pids.size()));
+        AtomicInteger threadId = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+                    Thread t = new Thread(r, "RASPSimple-Attach-" + threadId.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+
+        List<Result> results = new ArrayList<>();
+        List<Future<?>> futures = new ArrayList<>();
+        for (String pid : pids) {
+            Result result = new Result(pid);
+            results.add(result);
+            if (pid.equals(currentPid)) {
+                result.status = Status.SKIPPED;
+                result.error = "self";
+                infoLog("Skipping attaching to self");
+                futures.add(null);
+                continue;
+            }
+            futures.add(pool.submit(() -> attachOne(result, agentPath, nativeAgent)));
+        }
+
+        // 等待全部完成，超时从目标开始 attach 时计算（排队时间不计入）
+        boolean pending = true;
+        while (pending) {
+            pending = false;
+            for (int i = 0; i < results.size(); i++) {
+                Future<?> future = futures.get(i);
+                Result result = results.get(i);
+                if (future == null || result.status != null) {
+                    continue;
+                }
+                if (future.isDone()) {
+                    // attachOne 只捕获 Exception，Error 在这里兜底
+                    finish(result, Status.FAILED, "attach thread terminated abnormally");
+                    continue;
+                }
+                long start = result.startNanos;
+                if (start != 0 && System.nanoTime() - start > timeoutNanos) {
+                    if (!finish(result, Status.TIMEOUT, "attach timed out")) {
+                        continue;
+                    }
+                    future.cancel(true);
+                    failLog("Attach to " + result.pid + " timed out after " + result.millis + "ms");
+                    // 被卡住的线程可能不响应中断，补一个线程维持并发度
+                    pool.setMaximumPoolSize(pool.getMaximumPoolSize() + 1);
+                    pool.setCorePoolSize(pool.getCorePoolSize() + 1);
+                    continue;
+                }
+                pending = true;
+            }
+            if (pending) {
+                try {
+                    Thread.sleep(POLL_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        pool.shutdownNow();
+        return results;
+    }
+
+    private static void attachOne(Result result, String agentPath, File nativeAgent) {
+        result.startNanos = System.nanoTime();
+        Object vm = null;
+        try {
+            infoLog("Attaching to target JVM with PID: " + result.pid);
+            vm = AttachApiHelper.attach(result.pid);
+
+            String agentArgs = System.getProperty("rasp.attach.agentArgs");
+            // 先于 loadAgent 读取：新目标在 loadAgent 后也会带上该属性
+            boolean modeOnly = AgentMain.parseAgentArgs(agentArgs).containsKey("mode")
+                    && "true".equals(AttachApiHelper.getSystemProperties(vm).getProperty(AgentMain.INSTALLED_PROPERTY));
+            if (agentArgs == null || agentArgs.isEmpty()) {
+                AttachApiHelper.loadAgent(vm, agentPath);
+            } else {
+                AttachApiHelper.loadAgent(vm, agentPath, agentArgs);
+            }
+            result.javaAgent = true;
+            successLog("[JavaAgent] Attached to " + result.pid + " and loaded agent successfully");
+
+            // 复用同一个 attach 会话加载 Native Agent
+            if (modeOnly) {
+                infoLog("[NativeAgent] " + result.pid + " already protected, mode-only re-attach, native agent not reloaded");
+            } else if (nativeAgent.exists()) {
+                AttachApiHelper.loadAgentPath(vm, nativeAgent.getAbsolutePath());
+                result.nativeAgent = true;
+                successLog("[NativeAgent] Attached to " + result.pid + " and loaded native agent successfully");
+            }
+            finish(result, Status.OK, null);
+        } catch (Exception e) {
+            failLog("Attach to " + result.pid + " failed: " + e);
+            finish(result, Status.FAILED, e.toString());
+        } finally {
+            if (vm != null) {
+                try {
+                    AttachApiHelper.detach(vm);
+                } catch (Exception ignored) {
+                    // 目标可能已退出
+                }
+            }
+        }
+    }
+
+    /**
+     * 记录最终结果，attach 线程与超时判定之间先到者生效
+     * @return 是否由本次调用确定了结果
+     */
+    private static synchronized boolean finish(Result result, Status status, String error) {
+        if (result.status != null) {
+            return false;
+        }
+        result.millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - result.startNanos);
+        result.error = error;
+        result.status = status;
+        return true;
+    }
+
+    /**
+     * 输出报告：控制台一行 JSON，设置了 rasp.attach.report 时同时写入文件
+     */
+    public static void report(List<Result> results) {
+        String json = toJson(results);
+        System.out.println(json);
+        String path = System.getProperty("rasp.attach.report");
+        if (path != null && !path.isEmpty()) {
+            try {
+                Files.write(new File(path).toPath(), (json + System.lineSeparator()).getBytes(StandardCharsets.UTF_8));
+                infoLog("Attach report written to: " + path);
+            } catch (IOException e) {
+                failLog("Failed to write attach report " + path + ": " + e);
+            }
+        }
+    }
+
+    /** 是否所有目标都成功（SKIPPED 不算失败） */
+    public static boolean allSucceeded(List<Result> results) {
+        for (Result r : results) {
+            if (r.status != Status.OK && r.status != Status.SKIPPED) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static String toJson(List<Result> results) {
+        int ok = 0, failed = 0, timeout = 0, skipped = 0;
+        StringBuilder items = new StringBuilder();
+        for (Result r : results) {
+            Status status = r.status == null ? Status.FAILED : r.status;
+            switch (status) {
+                case OK: ok++; break;
+                case TIMEOUT: timeout++; break;
+                case SKIPPED: skipped++; break;
+                default: failed++; break;
+            }
+            if (items.length() > 0) {
+                items.append(',');
+            }
+            items.append("{\"pid\":").append(quote(r.pid))
+                    .append(",\"status\":\"").append(status).append('"')
+                    .append(",\"javaAgent\":").append(r.javaAgent)
+                    .append(",\"nativeAgent\":").append(r.nativeAgent)
+                    .append(",\"millis\":").append(r.millis)
+                    .append(",\"error\":").append(r.error == null ? "null" : quote(r.error))
+                    .append('}');
+        }
+        return "{\"total\":" + results.size() + ",\"ok\":" + ok + ",\"failed\":" + failed
+                + ",\"timeout\":" + timeout + ",\"skipped\":" + skipped + ",\"targets\":[" + items + "]}";
+    }
+
+    private static String quote(String s) {
+        StringBuilder sb = new StringBuilder(s.length() + 2).append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+}
@@ -3,25 +3,32 @@ package com.butler.helper;
 import com.butler.AgentMain;
 
 import java.io.File;
-import java.nio.file.Files;
 import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
 import java.util.Date;
-import java.util.logging.*;
+import java.util.Locale;
 
 import static com.butler.service.LLMAnalysis.LLM_LOG_FILE;
 
 /**
- * JUL 日志工具类，安全用于 Agent attach
+ * Agent 日志工具类，安全用于 Agent attach
+ *
+ * 日志通过 {@link AsyncLogAppender} 异步写盘，调用线程（通常是被插桩的进程启动线程）只做一次入队。
+ *
+ * 配置（JVM 系统属性）：
+ * - rasp.log.bufferSize       环形缓冲区条数，默认 8192
+ * - rasp.log.overflow         缓冲区满时 INFO 日志的策略 DROP / BLOCK，默认 DROP（WARN / ERROR 总是等待写入，不丢弃）
+ * - rasp.log.flushIntervalMs  最长写盘间隔（毫秒），默认 200
+ * - rasp.log.console          是否同时输出到控制台，默认 true
  */
 public class RaspLoggerHelper {
 
-    private static final Logger logger;
+    private static final String INFO = "INFO";
+    private static final String WARNING = "WARNING";
+    private static final String SEVERE = "SEVERE";
 
-    static {
-        logger = Logger.getLogger("com.butler.helper.RaspLogger");
-        logger.setUseParentHandlers(false); // 不输出到默认控制台
+    private static AsyncLogAppender appender;
 
+    static {
         try {
             // 获取应用目录
             String appDir = System.getProperty("user.dir");
@@ -33,66 +40,76 @@ public class RaspLoggerHelper {
             String timestamp = new java.text.SimpleDateFormat("yyyyMMdd_HHmmss").format(new Date());
             String logPath = appDir + File.separator + "RASPSimple_Agent_" + timestamp + ".log";
 
+            String overflow = System.getProperty("rasp.log.overflow", "DROP");
+            AsyncLogAppender.OverflowPolicy policy = parsePolicy(overflow);
+            appender = new AsyncLogAppender(Paths.get(logPath),
+                    Integer.getInteger("rasp.log.bufferSize", 8192),
+                    policy == null ? AsyncLogAppender.OverflowPolicy.DROP : policy,
+                    Long.getLong("rasp.log.flushIntervalMs", 200L),
+                    Boolean.parseBoolean(System.getProperty("rasp.log.console", "true")));
+            if (policy == null) {
+                warn("Unknown rasp.log.overflow: " + overflow + ", using DROP");
+            }
+
             if(AgentMain.LLM_ANALYZE_START){
                 // 在文件名中加上时间戳
                 LLM_LOG_FILE = appDir + File.separator + "RASPSimple_LLMAnalyze_" + timestamp + ".log";
                 RaspLoggerHelper.info("LLM Log initialized at: " + LLM_LOG_FILE);
             }
 
-            // 自定义 Handler，直接写文件，不使用 FileHandler
-            Handler fileHandler = new StreamHandler(Files.newOutputStream(Paths.get(logPath), StandardOpenOption.CREATE, StandardOpenOption.APPEND),
-                    new SimpleFormatter() {
-                        private static final String format = "[%1$tF %1$tT] [%4$-5s] %5$s %n";
-                        @Override
-                        public synchronized String format(LogRecord lr) {
-                            return String.format(format,
-                                    new Date(lr.getMillis()),
-                                    lr.getSourceClassName(),
-                                    lr.getLoggerName(),
-                                    lr.getLevel().getLocalizedName(),
-                                    lr.getMessage());
-                        }
-                    }) {
-                @Override
-                public synchronized void publish(LogRecord record) {
-                    super.publish(record);
-                    flush(); // 每次写完就 flush
-                }
-            };
-
-            fileHandler.setLevel(Level.INFO);
-            logger.addHandler(fileHandler);
-
-            // 控制台输出
-            ConsoleHandler consoleHandler = new ConsoleHandler();
-            consoleHandler.setLevel(Level.INFO);
-            consoleHandler.setFormatter(fileHandler.getFormatter());
-            logger.addHandler(consoleHandler);
-
-            logger.info("Log initialized at: " + logPath);
+            appender.append(INFO, "Log initialized at: " + logPath, null);
 
         } catch (Exception e) {
             e.printStackTrace();
         }
     }
 
+    /** 日志尚未初始化，取值无效时返回 null，由调用方记录警告后使用默认值 */
+    private static AsyncLogAppender.OverflowPolicy parsePolicy(String name) {
+        try {
+            return AsyncLogAppender.OverflowPolicy.valueOf(name.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
     /** INFO 级别日志 */
     public static void info(String msg) {
-        logger.info("[*] [RASPSimple] " + msg);
+        append(INFO, "[*] [RASPSimple] " + msg, null);
+    }
+
+    /**
+     * INFO 级别日志，msg 为完整消息（不再加前缀），prog / argBlock 由写线程延迟解码后拼接。
+     * 用于进程启动的放行路径，调用线程不做任何字符串拼接。
+     */
+    public static void infoArgBlock(String msg, byte[] prog, byte[] argBlock) {
+        if (appender != null) {
+            appender.append(INFO, msg, null, prog, argBlock);
+        }
     }
 
     /** WARN 级别日志 */
     public static void warn(String msg) {
-        logger.warning("[!] [RASPSimple] " + msg);
+        append(WARNING, "[!] [RASPSimple] " + msg, null);
     }
 
-    /** DEBUG 级别日志（对应 JUL FINE） */
+    /** DEBUG 级别日志（低于 INFO，不输出） */
     public static void debug(String msg) {
-        logger.fine("[&] [RASPSimple] " + msg);
     }
 
     /** ERROR 级别日志 */
     public static void error(String msg, Throwable t) {
-        logger.log(Level.SEVERE,"[x] [RASPSimple] " +  msg, t);
+        append(SEVERE, "[x] [RASPSimple] " + msg, t);
+    }
+
+    /** 因缓冲区满被丢弃的日志条数 */
+    public static long getDroppedCount() {
+        return appender == null ? 0 : appender.getDroppedCount();
+    }
+
+    private static void append(String level, String msg, Throwable t) {
+        if (appender != null) {
+            appender.append(level, msg, t);
+        }
     }
 }
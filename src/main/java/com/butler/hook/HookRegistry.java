@@ -0,0 +1,77 @@
+package com.butler.hook;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.butler.helper.TargetClassHelper.PROCESSIMPL;
+import static com.butler.helper.TargetClassHelper.UNIXPROCESS;
+
+/**
+ * Hook 点注册表
+ *
+ * 以目标类的内部名为键，CommandExecTransformer 对每个加载的类只做一次哈希查找即可判断是否需要改写。
+ * 新增 sink 只需在 {@link #builtin()} 中声明一条 {@link HookSpec}。
+ */
+public class HookRegistry {
+
+    private static final String CHECK_ARGS = "com/butler/util/ProcessCheckUtil.checkArgs(Ljava/lang/Object;)V";
+    private static final String CHECK_INNER_ARGS =
+            "com/butler/util/ProcessCheckUtil.checkInnerArgs(Ljava/lang/Object;Ljava/lang/Object;)V";
+
+    private static final HookRegistry DEFAULT = builtin();
+
+    private final Map<String, List<HookSpec>> hooks = new HashMap<>();
+
+    public static HookRegistry getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * 内置 Hook 点
+     */
+    static HookRegistry builtin() {
+        HookRegistry registry = new HookRegistry();
+        // ProcessImpl.start(String[] cmdarray, ...)
+        registry.register(new HookSpec(PROCESSIMPL, "start", null, CHECK_ARGS, 0));
+        // JDK9+ Linux / macOS：ProcessImpl(byte[] prog, byte[] argBlock, ...)
+        registry.register(new HookSpec(PROCESSIMPL, "<init>", "([B[B", CHECK_INNER_ARGS, 0, 1));
+        // Windows：ProcessImpl(String[] cmd, ...)，argBlock 传 null
+        registry.register(new HookSpec(PROCESSIMPL, "<init>", "([Ljava/lang/String;", CHECK_INNER_ARGS, 0));
+        // JDK 8 Linux：UNIXProcess(byte[] prog, byte[] argBlock, ...)
+        registry.register(new HookSpec(UNIXPROCESS, "<init>", "([B[B", CHECK_INNER_ARGS, 0, 1));
+        return registry;
+    }
+
+    /**
+     * 注册一个 Hook 点，只应在 Transformer 注册之前调用
+     */
+    public HookRegistry register(HookSpec spec) {
+        hooks.computeIfAbsent(spec.getClassName(), k -> new ArrayList<>()).add(spec);
+        return this;
+    }
+
+    /**
+     * 目标类上的所有 Hook 点
+     * @param internalName 类的内部名（java/lang/ProcessImpl）
+     * @return 非目标类返回 null
+     */
+    public List<HookSpec> get(String internalName) {
+        return hooks.get(internalName);
+    }
+
+    /**
+     * @param className 类的二进制名（java.lang.ProcessImpl）或内部名
+     */
+    public boolean isTarget(String className) {
+        return hooks.containsKey(className.replace('.', '/'));
+    }
+
+    /** 所有目标类的内部名 */
+    public Set<String> getClassNames() {
+        return Collections.unmodifiableSet(hooks.keySet());
+    }
+}
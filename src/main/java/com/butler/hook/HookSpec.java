@@ -0,0 +1,80 @@
+package com.butler.hook;
+
+import java.util.Arrays;
+
+/**
+ * 单个 Hook 点的声明
+ *
+ * 在 类.方法 入口，把指定下标的参数依次传给一个静态检测方法，例如
+ * java/lang/ProcessImpl.start 的第 0 个参数 → ProcessCheckUtil.checkArgs(Object)。
+ * 由 {@link com.butler.asm.HookMethodAdapter} 编译为通用的入口 advice，不需要为每个 Hook 点手写 AdviceAdapter。
+ */
+public class HookSpec {
+
+    private final String className;
+    private final String methodName;
+    private final String descriptorPrefix;
+    private final int[] argIndexes;
+    private final String checkOwner;
+    private final String checkName;
+    private final String checkDescriptor;
+
+    /**
+     * @param className        目标类的内部名（java/lang/ProcessImpl）
+     * @param methodName       方法名，构造器为 &lt;init&gt;
+     * @param descriptorPrefix 方法描述符前缀，用于区分重载（例如 "([B[B"），null 表示匹配所有重载
+     * @param check            检测方法，格式为 owner.name(desc)，参数均为引用类型
+     * @param argIndexes       依次传给检测方法的参数下标（不含 this），不足检测方法参数个数时补 null
+     */
+    public HookSpec(String className, String methodName, String descriptorPrefix, String check, int... argIndexes) {
+        int paren = check.indexOf('(');
+        int dot = paren < 0 ? -1 : check.lastIndexOf('.', paren);
+        if (dot < 0) {
+            throw new IllegalArgumentException("check method must be owner.name(desc): " + check);
+        }
+        this.className = className;
+        this.methodName = methodName;
+        this.descriptorPrefix = descriptorPrefix;
+        this.argIndexes = argIndexes.clone();
+        this.checkOwner = check.substring(0, dot);
+        this.checkName = check.substring(dot + 1, paren);
+        this.checkDescriptor = check.substring(paren);
+    }
+
+    /**
+     * 是否作用于该方法
+     */
+    public boolean matches(String name, String descriptor) {
+        return methodName.equals(name) && (descriptorPrefix == null || descriptor.startsWith(descriptorPrefix));
+    }
+
+    public String getClassName() {
+        return className;
+    }
+
+    public String getMethodName() {
+        return methodName;
+    }
+
+    public int[] getArgIndexes() {
+        return argIndexes.clone();
+    }
+
+    public String getCheckOwner() {
+        return checkOwner;
+    }
+
+    public String getCheckName() {
+        return checkName;
+    }
+
+    public String getCheckDescriptor() {
+        return checkDescriptor;
+    }
+
+    @Override
+    public String toString() {
+        return className + "." + methodName + (descriptorPrefix == null ? "" : descriptorPrefix + "...")
+                + " args" + Arrays.toString(argIndexes) + " -> " + checkOwner + "." + checkName + checkDescriptor;
+    }
+}
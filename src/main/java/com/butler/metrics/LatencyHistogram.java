@@ -0,0 +1,101 @@
+package com.butler.metrics;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 延迟直方图（HDR 风格的对数-线性分桶）
+ *
+ * 小于 2^SUB_BUCKET_BITS 纳秒的值逐一分桶；更大的值按 2 的幂分段，每段再线性细分为 2^(SUB_BUCKET_BITS-1) 个桶，
+ * 相对误差不超过 1/16。每个桶是一个 LongAdder，记录时只做一次定位和一次无竞争的累加，不加锁、不分配内存。
+ *
+ * 快照与 reset 不与记录互斥：读到的是近似一致的结果，对监控用途足够。
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int HALF = SUB_BUCKETS >> 1;
+    private static final int BUCKETS = SUB_BUCKETS + (63 - SUB_BUCKET_BITS) * HALF;
+
+    private final LongAdder[] counts = new LongAdder[BUCKETS];
+    private final LongAdder total = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    public LatencyHistogram() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * 记录一次耗时
+     * @param nanos 耗时（纳秒），负值按 0 处理
+     */
+    public void record(long nanos) {
+        long v = Math.max(0, nanos);
+        counts[indexOf(v)].increment();
+        total.add(v);
+        max.accumulate(v);
+    }
+
+    /** 清空直方图 */
+    public void reset() {
+        for (LongAdder c : counts) {
+            c.reset();
+        }
+        total.reset();
+        max.reset();
+    }
+
+    /**
+     * 当前分布的快照
+     */
+    public LatencySnapshot snapshot() {
+        long[] snap = new long[BUCKETS];
+        long n = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snap[i] = counts[i].sum();
+            n += snap[i];
+        }
+        long sum = total.sum();
+        return new LatencySnapshot(n, n == 0 ? 0 : sum / n, max.get(),
+                percentile(snap, n, 0.50), percentile(snap, n, 0.90),
+                percentile(snap, n, 0.99), percentile(snap, n, 0.999));
+    }
+
+    /** 返回所在桶的上界，保证不低估 */
+    private static long percentile(long[] snap, long n, double p) {
+        if (n == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(p * n);
+        long seen = 0;
+        for (int i = 0; i < snap.length; i++) {
+            seen += snap[i];
+            if (seen >= rank) {
+                return upperBound(i);
+            }
+        }
+        return upperBound(snap.length - 1);
+    }
+
+    static int indexOf(long v) {
+        if (v < SUB_BUCKETS) {
+            return (int) v;
+        }
+        int exp = 63 - Long.numberOfLeadingZeros(v);
+        int sub = (int) (v >>> (exp - (SUB_BUCKET_BITS - 1)));
+        return SUB_BUCKETS + (exp - SUB_BUCKET_BITS) * HALF + (sub - HALF);
+    }
+
+    static long upperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int k = index - SUB_BUCKETS;
+        int shift = k / HALF + 1;
+        long sub = k % HALF + HALF;
+        return ((sub + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,289 @@
+package com.butler.metrics;
+
+import com.butler.helper.RaspLoggerHelper;
+import com.butler.service.LLMAnalysisQueue;
+import com.butler.service.LLMClient;
+import com.butler.service.LLMRateLimiter;
+import com.butler.util.BlacklistRules;
+import com.butler.util.ProcessCheckUtil;
+import com.butler.util.RaspMode;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import static com.butler.AgentMain.QWEN_API_KEY;
+
+/**
+ * RASPSimple 运行指标
+ *
+ * 计数器均为 LongAdder，延迟为 {@link LatencyHistogram}，进程启动线程上的记录不加锁、不分配内存
+ * （规则命中计数只在阻断时按规则查表）。由 AgentMain 在 premain / agentmain 中注册为平台 MBean。
+ */
+public class RaspMetrics implements RaspMetricsMXBean {
+
+    public static final String OBJECT_NAME = "com.butler:type=RASPSimple";
+
+    private static final RaspMetrics INSTANCE = new RaspMetrics();
+
+    private final LongAdder checks = new LongAdder();
+    private final LongAdder blocks = new LongAdder();
+    private final LongAdder llmCalls = new LongAdder();
+    private final LongAdder llmFailures = new LongAdder();
+    private final LongAdder localScores = new LongAdder();
+    private final LongAdder localEscalations = new LongAdder();
+    private final LongAdder localHighRisk = new LongAdder();
+    private final ConcurrentHashMap<String, LongAdder> ruleHits = new ConcurrentHashMap<>();
+
+    private final LatencyHistogram checkLatency = new LatencyHistogram();
+    private final LatencyHistogram regexLatency = new LatencyHistogram();
+    private final LatencyHistogram llmLatency = new LatencyHistogram();
+    private final LatencyHistogram localScoreLatency = new LatencyHistogram();
+
+    public static RaspMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 注册到平台 MBeanServer，重复注册时忽略
+     */
+    public static void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.registerMBean(INSTANCE, new ObjectName(OBJECT_NAME));
+            RaspLoggerHelper.info("Metrics MBean registered: " + OBJECT_NAME);
+        } catch (InstanceAlreadyExistsException ignored) {
+            // 多次 attach 时保留第一次注册的实例
+        } catch (Exception e) {
+            RaspLoggerHelper.error("注册RASPSimple指标MBean失败", e);
+        }
+    }
+
+    /** 一次 checkArgs 结束 */
+    public void recordCheck(long nanos) {
+        checks.increment();
+        checkLatency.record(nanos);
+    }
+
+    /** 一次黑名单匹配结束 */
+    public void recordRegex(long nanos) {
+        regexLatency.record(nanos);
+    }
+
+    /** 命中黑名单规则并阻断 */
+    public void recordBlock(String rule) {
+        blocks.increment();
+        if (rule != null) {
+            ruleHits.computeIfAbsent(rule, k -> new LongAdder()).increment();
+        }
+    }
+
+    /** 一次大模型请求结束 */
+    public void recordLlmCall(long nanos, boolean failed) {
+        llmCalls.increment();
+        if (failed) {
+            llmFailures.increment();
+        }
+        llmLatency.record(nanos);
+    }
+
+    /** 一次本地风险评分结束 */
+    public void recordLocalScore(long nanos, boolean escalated) {
+        localScores.increment();
+        if (escalated) {
+            localEscalations.increment();
+        }
+        localScoreLatency.record(nanos);
+    }
+
+    /** 本地评分高于 rasp.risk.high、直接判定为高风险 */
+    public void recordLocalHighRisk() {
+        localHighRisk.increment();
+    }
+
+    @Override
+    public long getCheckCount() {
+        return checks.sum();
+    }
+
+    @Override
+    public long getBlockCount() {
+        return blocks.sum();
+    }
+
+    @Override
+    public Map<String, Long> getRuleHits() {
+        Map<String, Long> hits = new TreeMap<>();
+        for (Map.Entry<String, LongAdder> e : ruleHits.entrySet()) {
+            hits.put(e.getKey(), e.getValue().sum());
+        }
+        return hits;
+    }
+
+    @Override
+    public long getCacheHitCount() {
+        return ProcessCheckUtil.getVerdictCache().getHitCount();
+    }
+
+    @Override
+    public long getLlmCallCount() {
+        return llmCalls.sum();
+    }
+
+    @Override
+    public long getLlmFailureCount() {
+        return llmFailures.sum();
+    }
+
+    /**
+     * 是否开启了 LLM 分析。未开启时 LLM 相关属性返回默认值，
+     * JMX 控制台轮询不会初始化分析队列（启动工作线程）、客户端与预算，也不会加载模型 SDK
+     */
+    private static boolean llmEnabled() {
+        return QWEN_API_KEY != null && !QWEN_API_KEY.isEmpty();
+    }
+
+    @Override
+    public int getLlmQueueDepth() {
+        return llmEnabled() ? LLMAnalysisQueue.getInstance().getQueueDepth() : 0;
+    }
+
+    @Override
+    public String getLlmBreakerState() {
+        return llmEnabled() ? LLMClient.getInstance().getState().name() : "CLOSED";
+    }
+
+    @Override
+    public long getLlmBreakerStateMillis() {
+        return llmEnabled() ? LLMClient.getInstance().getStateMillis() : 0;
+    }
+
+    @Override
+    public long getLlmBreakerOpenCount() {
+        return llmEnabled() ? LLMClient.getInstance().getOpenCount() : 0;
+    }
+
+    @Override
+    public long getLlmBreakerRejectedCount() {
+        return llmEnabled() ? LLMClient.getInstance().getRejectedCount() : 0;
+    }
+
+    @Override
+    public long getLlmRetryCount() {
+        return llmEnabled() ? LLMClient.getInstance().getRetryCount() : 0;
+    }
+
+    @Override
+    public long getLocalScoreCount() {
+        return localScores.sum();
+    }
+
+    @Override
+    public long getLocalEscalationCount() {
+        return localEscalations.sum();
+    }
+
+    @Override
+    public long getLocalHighRiskCount() {
+        return localHighRisk.sum();
+    }
+
+    @Override
+    public long getLlmAdmittedCount() {
+        return llmEnabled() ? LLMRateLimiter.getInstance().getAdmittedCount() : 0;
+    }
+
+    @Override
+    public long getLlmSampledCount() {
+        return llmEnabled() ? LLMRateLimiter.getInstance().getSampledCount() : 0;
+    }
+
+    @Override
+    public long getLlmBudgetDroppedCount() {
+        return llmEnabled() ? LLMRateLimiter.getInstance().getDroppedCount() : 0;
+    }
+
+    @Override
+    public long getLlmThrottledCount() {
+        return llmEnabled() ? LLMRateLimiter.getInstance().getThrottledCount() : 0;
+    }
+
+    @Override
+    public double getLlmRepeatSampleRatio() {
+        return llmEnabled() ? LLMRateLimiter.getInstance().getRepeatSampleRatio() : 0;
+    }
+
+    @Override
+    public long getLogDroppedCount() {
+        return RaspLoggerHelper.getDroppedCount();
+    }
+
+    @Override
+    public int getRuleSetVersion() {
+        return BlacklistRules.current().getVersion();
+    }
+
+    @Override
+    public String getRuleSetSource() {
+        return BlacklistRules.current().getSource();
+    }
+
+    @Override
+    public int getRuleCount() {
+        return BlacklistRules.current().getMatcher().size();
+    }
+
+    @Override
+    public double getLastRuleReloadMillis() {
+        return TimeUnit.NANOSECONDS.toMicros(BlacklistRules.getLastReloadNanos()) / 1000.0;
+    }
+
+    @Override
+    public long getRuleReloadFailureCount() {
+        return BlacklistRules.getReloadFailureCount();
+    }
+
+    @Override
+    public LatencySnapshot getCheckLatency() {
+        return checkLatency.snapshot();
+    }
+
+    @Override
+    public LatencySnapshot getRegexLatency() {
+        return regexLatency.snapshot();
+    }
+
+    @Override
+    public LatencySnapshot getLlmLatency() {
+        return llmLatency.snapshot();
+    }
+
+    @Override
+    public LatencySnapshot getLocalScoreLatency() {
+        return localScoreLatency.snapshot();
+    }
+
+    @Override
+    public String getMode() {
+        return RaspMode.getName();
+    }
+
+    @Override
+    public void setMode(String mode) {
+        RaspMode.set(mode);
+    }
+
+    @Override
+    public void resetHistograms() {
+        checkLatency.reset();
+        regexLatency.reset();
+        llmLatency.reset();
+        localScoreLatency.reset();
+        RaspLoggerHelper.info("Metrics histograms reset");
+    }
+}
@@ -0,0 +1,108 @@
+package com.butler.metrics;
+
+import java.util.Map;
+
+/**
+ * RASPSimple 运行指标，注册为 com.butler:type=RASPSimple，可通过 jconsole / JMX 客户端查看
+ */
+public interface RaspMetricsMXBean {
+
+    /** 检测次数（含白名单、缓存命中） */
+    long getCheckCount();
+
+    /** 阻断次数（MONITOR 模式下为命中次数） */
+    long getBlockCount();
+
+    /** 各黑名单规则的命中次数，键为规则正则 */
+    Map<String, Long> getRuleHits();
+
+    /** 结论缓存命中次数 */
+    long getCacheHitCount();
+
+    /** 实际发出的大模型请求数（不含持久化结论命中） */
+    long getLlmCallCount();
+
+    /** 失败的大模型请求数 */
+    long getLlmFailureCount();
+
+    /** LLM 分析队列深度 */
+    int getLlmQueueDepth();
+
+    /** LLM 熔断状态：CLOSED / OPEN / HALF_OPEN */
+    String getLlmBreakerState();
+
+    /** 处于当前熔断状态的时长（毫秒） */
+    long getLlmBreakerStateMillis();
+
+    /** LLM 熔断打开次数 */
+    long getLlmBreakerOpenCount();
+
+    /** 熔断期间跳过的分析次数 */
+    long getLlmBreakerRejectedCount();
+
+    /** LLM 请求重试次数 */
+    long getLlmRetryCount();
+
+    /** 本地风险模型评分次数 */
+    long getLocalScoreCount();
+
+    /** 本地评分落在边界区间、交给 LLM 的次数 */
+    long getLocalEscalationCount();
+
+    /** 本地评分高于 rasp.risk.high、未经 LLM 直接判定为高风险的次数 */
+    long getLocalHighRiskCount();
+
+    /** 通过分析预算、送去分析的命令数 */
+    long getLlmAdmittedCount();
+
+    /** 重复命令未被采样而跳过分析的次数 */
+    long getLlmSampledCount();
+
+    /** 超出令牌桶或限流退避中被丢弃的分析次数 */
+    long getLlmBudgetDroppedCount();
+
+    /** 模型接口返回限流错误的次数 */
+    long getLlmThrottledCount();
+
+    /** 当前重复命令的采样率 */
+    double getLlmRepeatSampleRatio();
+
+    /** 因缓冲区满丢弃的日志条数 */
+    long getLogDroppedCount();
+
+    /** 当前黑名单规则集版本（内置规则为 1，每次热更新成功递增） */
+    int getRuleSetVersion();
+
+    /** 当前黑名单规则来源：builtin 或规则文件路径 */
+    String getRuleSetSource();
+
+    /** 当前黑名单规则条数 */
+    int getRuleCount();
+
+    /** 最近一次规则加载耗时（毫秒） */
+    double getLastRuleReloadMillis();
+
+    /** 规则文件加载失败次数 */
+    long getRuleReloadFailureCount();
+
+    /** checkArgs 整体耗时 */
+    LatencySnapshot getCheckLatency();
+
+    /** 黑名单匹配（自动机 + 正则）耗时 */
+    LatencySnapshot getRegexLatency();
+
+    /** 大模型请求耗时 */
+    LatencySnapshot getLlmLatency();
+
+    /** 本地风险模型评分耗时 */
+    LatencySnapshot getLocalScoreLatency();
+
+    /** 运行模式：OFF / MONITOR / ENFORCE */
+    String getMode();
+
+    /** 切换运行模式，立即生效，无需 retransform */
+    void setMode(String mode);
+
+    /** 清空延迟直方图 */
+    void resetHistograms();
+}
@@ -0,0 +1,54 @@
+package com.butler.service;
+
+import com.alibaba.dashscope.aigc.generation.Generation;
+import com.alibaba.dashscope.aigc.generation.GenerationParam;
+import com.alibaba.dashscope.aigc.generation.GenerationResult;
+import com.alibaba.dashscope.exception.InputRequiredException;
+import com.alibaba.dashscope.exception.NoApiKeyException;
+import com.alibaba.dashscope.protocol.ConnectionOptions;
+import com.alibaba.dashscope.protocol.Protocol;
+import com.alibaba.dashscope.utils.Constants;
+import java.time.Duration;
+
+/**
+ * DashScope 文本生成接口（HTTP）
+ *
+ * 全进程共用一个 Generation，底层 OkHttpClient 派生自 SDK 的共享实例，连接池复用。
+ * 接口地址可用 rasp.llm.baseUrl 改为兼容同一协议的其它服务，例如压测用的本地替身服务。
+ *
+ * 配置（JVM 系统属性）：
+ * - rasp.llm.baseUrl          接口地址，默认为 SDK 的 DashScope 地址（DASHSCOPE_HTTP_BASE_URL 环境变量可覆盖）
+ * - rasp.llm.connectTimeoutMs 连接超时，默认 3000
+ * - rasp.llm.readTimeoutMs    读 / 写超时，默认 30000
+ */
+public class DashScopeEndpoint implements ModelEndpoint {
+
+    private final Generation generation;
+    private final String baseUrl;
+
+    public DashScopeEndpoint() {
+        this(System.getProperty("rasp.llm.baseUrl", Constants.baseHttpApiUrl),
+                Long.getLong("rasp.llm.connectTimeoutMs", 3000L),
+                Long.getLong("rasp.llm.readTimeoutMs", 30000L));
+    }
+
+    public DashScopeEndpoint(String baseUrl, long connectTimeoutMillis, long readTimeoutMillis) {
+        this.baseUrl = baseUrl;
+        this.generation = new Generation(Protocol.HTTP.getValue(), baseUrl,
+                ConnectionOptions.builder()
+                        .connectTimeout(Duration.ofMillis(connectTimeoutMillis))
+                        .readTimeout(Duration.ofMillis(readTimeoutMillis))
+                        .writeTimeout(Duration.ofMillis(readTimeoutMillis))
+                        .build());
+    }
+
+    @Override
+    public GenerationResult call(GenerationParam param) throws NoApiKeyException, InputRequiredException {
+        return generation.call(param);
+    }
+
+    @Override
+    public String toString() {
+        return "DashScopeEndpoint{" + baseUrl + "}";
+    }
+}
@@ -4,12 +4,12 @@ import com.butler.helper.RaspLoggerHelper;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import com.alibaba.dashscope.aigc.generation.Generation;
 import com.alibaba.dashscope.aigc.generation.GenerationParam;
 import com.alibaba.dashscope.aigc.generation.GenerationResult;
 import com.alibaba.dashscope.common.Message;
@@ -24,6 +24,9 @@ public class LLMAnalysis {
 
     public static String LLM_LOG_FILE;
 
+    /** 模型名称，rasp.llm.model，默认 qwen-plus */
+    private static final String MODEL = System.getProperty("rasp.llm.model", "qwen-plus");
+
     /** 系统提示与分析模板 */
     private static final Message sysMsg =
             Message.builder().role(Role.SYSTEM.getValue()).content(PromptUtil.SYS_PROMPT).build();
@@ -37,19 +40,27 @@ public class LLMAnalysis {
      * @return 返回模型评分（0-10）
      */
     public static int analyze(String command, String callstack) {
-        File logFile = new File(LLM_LOG_FILE);
-        try {
-            if (!logFile.exists()) {
-                logFile.getParentFile().mkdirs();
-                logFile.createNewFile();
-            }
-        } catch (IOException e) {
-            RaspLoggerHelper.error("创建RASPSimple LLM大模型分析日志文件错误",e);
-            throw new RuntimeException(e);
+        LLMVerdict verdict = analyzeVerdict(command, callstack);
+        return verdict == null ? 0 : verdict.getScore();
+    }
+
+    /**
+     * 执行大模型分析，一次调用同时拿到评分与结构化结论
+     * @param command 被执行命令（或完整参数）
+     * @param callstack 调用栈字符串
+     * @return 模型结论，调用失败返回 null
+     */
+    public static LLMVerdict analyzeVerdict(String command, String callstack) {
+        // 先查主机级持久化结论，其它 JVM 或上次运行已分析过的命令不再调用模型
+        LLMVerdict stored = lookupStore(command);
+        if (stored != null) {
+            RaspLoggerHelper.info(command + " 命中持久化LLM结论，评分: " + stored.getScore());
+            return stored;
         }
 
-        Generation gen = new Generation();
-        int score = 0;
+        File logFile = ensureLogFile();
+
+        LLMVerdict verdict = null;
 
         try {
             // 准备消息列表
@@ -62,34 +73,18 @@ public class LLMAnalysis {
 
             messages.add(Message.builder()
                     .role(Role.USER.getValue())
-                    .content("请根据以下命令参数与调用栈信息判断安全风险：\n" + sb)
+                    .content("请根据以下命令参数与调用栈信息判断安全风险，只输出符合输出格式的JSON对象：\n" + sb)
                     .build());
 
-            // 第一步：让模型输出完整分析
-            GenerationResult result;
-            try {
-                result = gen.call(createGenerationParam(messages, QWEN_API_KEY));
-            } catch (NoApiKeyException | InputRequiredException e) {
-                RaspLoggerHelper.error("LLM大模型调用出错",e);
-                throw new RuntimeException(e);
-            }
+            // 单次调用：模型按 GUIDELINES_TEMPLATE 输出 JSON，评分直接从中解析
+            GenerationResult result = call(messages);
 
             String fullAnalysis = result.getOutput().getChoices().get(0).getMessage().getContent();
+            verdict = LLMVerdict.parse(fullAnalysis);
+            saveToStore(command, verdict);
             RaspLoggerHelper.info(command + "LLM大模型分析结果已出!\n");
-            writeToFile(logFile,"命令：" + command +
-                    "\nLLM大模型分析结果：\n" + fullAnalysis);
-
-            // 第二步：追加“只输出评分数字”提示
-            messages.add(Message.builder()
-                    .role(Role.USER.getValue())
-                    .content("请只输出风险评分数字（0-10）").build());
-            GenerationResult scoreResult = gen.call(createGenerationParam(messages, QWEN_API_KEY));
-            String scoreStr = scoreResult.getOutput().getChoices().get(0).getMessage().getContent();
-
-            Pattern p = Pattern.compile("\\d+");
-            Matcher m = p.matcher(scoreStr);
-            if (m.find()) {
-                score = Integer.parseInt(m.group());
+            if (!verdict.isStructured()) {
+                RaspLoggerHelper.warn("LLM大模型输出不是合法JSON，已按文本解析评分: " + verdict.getScore());
             }
 
             // 日志输出
@@ -97,18 +92,145 @@ public class LLMAnalysis {
                     "命令：" + command +
                     "\n调用栈：\n" + callstack +
                     "\n分析结果：\n" + fullAnalysis +
-                    "\n评分：" + score + "\n\n");
+                    "\n评分：" + verdict.getScore() + "\n\n");
 
+        } catch (LLMClient.CircuitOpenException e) {
+            RaspLoggerHelper.warn(command + " " + e.getMessage());
         } catch (Exception e) {
             RaspLoggerHelper.error("LLM分析失败", e);
         }
-        return score;
+        return verdict;
+    }
+
+    /**
+     * 批量大模型分析：多条命令编号后放在同一次请求中，系统提示只发送一次
+     * @param commands 被执行命令列表
+     * @param callstacks 与命令一一对应的调用栈
+     * @return 与输入顺序对应的结论列表，某条未能解析时对应位置为 null；调用失败返回 null
+     */
+    public static List<LLMVerdict> analyzeBatch(List<String> commands, List<String> callstacks) {
+        // 持久化结论命中的命令不再发送给模型
+        List<LLMVerdict> verdicts = new ArrayList<>(commands.size());
+        List<Integer> pending = new ArrayList<>();
+        for (int i = 0; i < commands.size(); i++) {
+            LLMVerdict stored = lookupStore(commands.get(i));
+            verdicts.add(stored);
+            if (stored == null) {
+                pending.add(i);
+            }
+        }
+        if (pending.isEmpty()) {
+            return verdicts;
+        }
+
+        List<String> pendingCommands = new ArrayList<>(pending.size());
+        List<String> pendingCallstacks = new ArrayList<>(pending.size());
+        for (int i : pending) {
+            pendingCommands.add(commands.get(i));
+            pendingCallstacks.add(callstacks.get(i));
+        }
+        List<LLMVerdict> analyzed = pending.size() == 1
+                ? Collections.singletonList(analyzeVerdict(pendingCommands.get(0), pendingCallstacks.get(0)))
+                : callBatch(pendingCommands, pendingCallstacks);
+        if (analyzed == null) {
+            return null;
+        }
+        for (int j = 0; j < pending.size(); j++) {
+            verdicts.set(pending.get(j), analyzed.get(j));
+        }
+        return verdicts;
+    }
+
+    /** 发送一次批量请求 */
+    private static List<LLMVerdict> callBatch(List<String> commands, List<String> callstacks) {
+        File logFile = ensureLogFile();
+
+        List<LLMVerdict> verdicts = null;
+
+        try {
+            List<Message> messages = new ArrayList<>(Arrays.asList(sysMsg, guideMsg));
+
+            // 拼接编号列表
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < commands.size(); i++) {
+                sb.append("#").append(i + 1).append("\n")
+                        .append("命令参数如下：\n").append(commands.get(i))
+                        .append("\n调用栈如下：\n").append(callstacks.get(i))
+                        .append("\n\n");
+            }
+
+            messages.add(Message.builder()
+                    .role(Role.USER.getValue())
+                    .content("以下共 " + commands.size() + " 条命令，请分别判断安全风险。"
+                            + "只输出一个JSON数组，每个元素符合输出格式，并额外包含 index 字段（对应编号）：\n" + sb)
+                    .build());
+
+            GenerationResult result = call(messages);
+
+            String fullAnalysis = result.getOutput().getChoices().get(0).getMessage().getContent();
+            verdicts = LLMVerdict.parseBatch(fullAnalysis, commands.size());
+            for (int i = 0; i < commands.size(); i++) {
+                if (verdicts.get(i) != null) {
+                    saveToStore(commands.get(i), verdicts.get(i));
+                }
+            }
+            RaspLoggerHelper.info("LLM大模型批量分析结果已出! 共 " + commands.size() + " 条\n");
+
+            StringBuilder log = new StringBuilder();
+            for (int i = 0; i < commands.size(); i++) {
+                LLMVerdict v = verdicts.get(i);
+                log.append("命令：").append(commands.get(i))
+                        .append("\n调用栈：\n").append(callstacks.get(i))
+                        .append("\n分析结果：\n").append(v == null ? "(缺失)" : v.getConclusion())
+                        .append("\n评分：").append(v == null ? "-" : String.valueOf(v.getScore()))
+                        .append("\n\n");
+            }
+            writeToFile(logFile, log.toString());
+
+        } catch (LLMClient.CircuitOpenException e) {
+            RaspLoggerHelper.warn(e.getMessage());
+        } catch (Exception e) {
+            RaspLoggerHelper.error("LLM批量分析失败", e);
+        }
+        return verdicts;
+    }
+
+    /** 通过共享客户端发送一次模型请求（超时、重试、熔断、调用指标由 {@link LLMClient} 负责） */
+    private static GenerationResult call(List<Message> messages) {
+        try {
+            return LLMClient.getInstance().call(createGenerationParam(messages, QWEN_API_KEY));
+        } catch (NoApiKeyException | InputRequiredException e) {
+            RaspLoggerHelper.error("LLM大模型调用出错",e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    /** 查询持久化结论 */
+    private static LLMVerdict lookupStore(String command) {
+        VerdictStore store = VerdictStore.getInstance();
+        if (store == null) {
+            return null;
+        }
+        VerdictStore.Entry entry = store.get(command);
+        if (entry == null) {
+            return null;
+        }
+        return new LLMVerdict(entry.getScore(), "(持久化结论)", null, null,
+                (entry.getFlags() & VerdictStore.FLAG_STRUCTURED) != 0);
+    }
+
+    /** 写入持久化结论，只保存解析出结构化 JSON 的结论，避免宽松解析的误差长期留存 */
+    private static void saveToStore(String command, LLMVerdict verdict) {
+        VerdictStore store = VerdictStore.getInstance();
+        if (store != null && verdict.isStructured()) {
+            store.put(command, verdict.getScore(), VerdictStore.FLAG_STRUCTURED);
+        }
     }
 
     /** 构造模型参数 */
     private static GenerationParam createGenerationParam(List<Message> messages, String apiKey) {
         GenerationParam param = GenerationParam.builder()
-                .model("qwen-plus")
+                .model(MODEL)
                 .messages(messages)
                 .resultFormat("message")
                 .build();
@@ -122,6 +244,46 @@ public class LLMAnalysis {
         return param;
     }
 
+    /**
+     * 记录本地风险模型直接判定为高风险（高于 rasp.risk.high）、未交给 LLM 的命令，与 LLM 结论写入同一分析日志。
+     * 评分写在"本地评分："行，RiskModelTool 只读取"评分："行，本地结论不会作为训练标签回流。
+     */
+    public static void recordLocalVerdict(String command, String callstack, int score) {
+        try {
+            writeToFile(ensureLogFile(),
+                    "命令：" + command +
+                    "\n调用栈：\n" + callstack +
+                    "\n分析结果：\n本地风险模型判定为高风险（高于 " + RiskModel.HIGH + "），未经LLM分析" +
+                    "\n本地评分：" + score + "\n\n");
+        } catch (RuntimeException e) {
+            // 错误已记录，不影响进程启动
+        }
+    }
+
+    /** LLM 分析日志文件，路径未初始化时在应用目录下按时间戳命名，不存在时创建 */
+    private static synchronized File ensureLogFile() {
+        if (LLM_LOG_FILE == null || LLM_LOG_FILE.isEmpty()) {
+            String appDir = System.getProperty("user.dir");
+            if (appDir == null || appDir.isEmpty()) {
+                appDir = new File(".").getAbsolutePath();
+            }
+            String timestamp = new SimpleDateFormat("yyyyMMdd_HHmmss").format(new Date());
+            LLM_LOG_FILE = appDir + File.separator + "RASPSimple_LLMAnalyze_" + timestamp + ".log";
+            RaspLoggerHelper.info("LLM Log initialized at: " + LLM_LOG_FILE);
+        }
+        File logFile = new File(LLM_LOG_FILE);
+        try {
+            if (!logFile.exists()) {
+                logFile.getParentFile().mkdirs();
+                logFile.createNewFile();
+            }
+        } catch (IOException e) {
+            RaspLoggerHelper.error("创建RASPSimple LLM大模型分析日志文件错误",e);
+            throw new RuntimeException(e);
+        }
+        return logFile;
+    }
+
     /** 写入文件 */
     private static void writeToFile(File logFile,String content) {
         try (FileWriter writer = new FileWriter(logFile, true)) {
@@ -0,0 +1,341 @@
+package com.butler.service;
+
+import com.butler.helper.RaspLoggerHelper;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntConsumer;
+import java.util.function.Supplier;
+
+/**
+ * LLM 异步分析队列
+ *
+ * checkArgs 运行在被插桩的 ProcessImpl.start / UNIXProcess.&lt;init&gt; 中，同步调用大模型会让进程启动等待数秒。
+ * 这里用有界队列 + 后台工作线程池承接分析任务：启动进程的线程只负责入队命令和调用栈，随即返回。
+ *
+ * 队列满时的策略（rasp.llm.overflow）：
+ * - DROP_OLDEST 丢弃最早入队的任务，保留最新命令（默认）
+ * - DROP_NEW    丢弃新任务
+ * - SAMPLE      以 rasp.llm.sampleRatio 的概率替换最早的任务，否则丢弃新任务
+ *
+ * 其它配置：rasp.llm.queueSize（默认 256）、rasp.llm.workers（默认 2）
+ *
+ * 入队前先经过 {@link LLMClient} 的熔断判定与 {@link LLMRateLimiter} 的预算判定（限流 + 重复命令采样），
+ * 未通过的命令不采集调用栈。
+ *
+ * 批量模式（rasp.llm.batchSize &gt; 1 时开启）：工作线程在 rasp.llm.batchWindowMs（默认 200ms）窗口内
+ * 最多收集 batchSize 条命令，合并为一次请求，系统提示只发送一次。
+ */
+public class LLMAnalysisQueue {
+
+    public enum OverflowPolicy {
+        DROP_OLDEST, DROP_NEW, SAMPLE
+    }
+
+    private static final class Task {
+        final String command;
+        final String callstack;
+        final IntConsumer onScore;
+        final long enqueuedNanos;
+
+        Task(String command, String callstack, IntConsumer onScore) {
+            this.command = command;
+            this.callstack = callstack;
+            this.onScore = onScore;
+            this.enqueuedNanos = System.nanoTime();
+        }
+    }
+
+    private static final LLMAnalysisQueue INSTANCE = new LLMAnalysisQueue(
+            parsePositive("rasp.llm.queueSize", 256),
+            parsePositive("rasp.llm.workers", 2),
+            parsePolicy(System.getProperty("rasp.llm.overflow")),
+            parseRatio(System.getProperty("rasp.llm.sampleRatio")),
+            Integer.getInteger("rasp.llm.batchSize", 1),
+            Long.getLong("rasp.llm.batchWindowMs", 200L));
+
+    private final BlockingQueue<Task> queue;
+    private final OverflowPolicy policy;
+    private final double sampleRatio;
+    private final int batchSize;
+    private final long batchWindowNanos;
+    /** 已在队列或正在分析的命令，避免同一命令重复入队 */
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    /** 工作线程调用模型的次数（单条或批量各计一次），用于计算平均分析耗时 */
+    private final LongAdder analyzeRuns = new LongAdder();
+    private final LongAdder totalAnalyzeNanos = new LongAdder();
+    private final LongAdder totalWaitNanos = new LongAdder();
+    private final AtomicLong maxAnalyzeNanos = new AtomicLong();
+
+    LLMAnalysisQueue(int capacity, int workers, OverflowPolicy policy, double sampleRatio,
+                     int batchSize, long batchWindowMillis) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.policy = policy;
+        this.sampleRatio = sampleRatio;
+        this.batchSize = Math.max(1, batchSize);
+        this.batchWindowNanos = TimeUnit.MILLISECONDS.toNanos(batchWindowMillis);
+        for (int i = 0; i < workers; i++) {
+            Thread t = new Thread(this::runWorker, "RASPSimple-LLM-" + i);
+            t.setDaemon(true);
+            t.start();
+        }
+        RaspLoggerHelper.info("LLM analysis queue started, capacity=" + capacity
+                + " workers=" + workers + " overflow=" + policy + " batchSize=" + this.batchSize);
+    }
+
+    public static LLMAnalysisQueue getInstance() {
+        return INSTANCE;
+    }
+
+    /* 配置在进程启动路径上的静态初始化中解析，取值无效时记录警告并使用默认值，不能抛出 */
+
+    private static int parsePositive(String key, int def) {
+        String value = System.getProperty(key);
+        if (value == null || value.isEmpty()) {
+            return def;
+        }
+        try {
+            int parsed = Integer.parseInt(value.trim());
+            if (parsed > 0) {
+                return parsed;
+            }
+        } catch (NumberFormatException ignored) {
+            // 与非正数一样按无效值处理
+        }
+        RaspLoggerHelper.warn("Invalid " + key + ": " + value + ", using " + def);
+        return def;
+    }
+
+    private static OverflowPolicy parsePolicy(String name) {
+        if (name == null || name.isEmpty()) {
+            return OverflowPolicy.DROP_OLDEST;
+        }
+        try {
+            return OverflowPolicy.valueOf(name.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            RaspLoggerHelper.warn("Unknown rasp.llm.overflow: " + name + ", using DROP_OLDEST");
+            return OverflowPolicy.DROP_OLDEST;
+        }
+    }
+
+    private static double parseRatio(String value) {
+        if (value == null || value.isEmpty()) {
+            return 0.1;
+        }
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            RaspLoggerHelper.warn("Invalid rasp.llm.sampleRatio: " + value + ", using 0.1");
+            return 0.1;
+        }
+    }
+
+    /**
+     * 提交分析任务，不阻塞调用线程
+     * @param command 被执行命令
+     * @param callstack 调用栈采集函数，只在任务确实需要入队时在调用线程中执行一次
+     * @param onScore 分析完成后的评分回调（在工作线程中执行）
+     * @return 是否入队成功
+     */
+    public boolean submit(String command, Supplier<String> callstack, IntConsumer onScore) {
+        if (!inFlight.add(command)) {
+            return false;
+        }
+        if (LLMClient.getInstance().isRejecting()) {
+            LLMClient.getInstance().recordRejected();
+            inFlight.remove(command);
+            return false;
+        }
+        if (!LLMRateLimiter.getInstance().tryAdmit(command)) {
+            inFlight.remove(command);
+            return false;
+        }
+        Task task = new Task(command, callstack.get(), onScore);
+        if (queue.offer(task)) {
+            submitted.increment();
+            return true;
+        }
+
+        boolean replaceOldest = policy == OverflowPolicy.DROP_OLDEST
+                || (policy == OverflowPolicy.SAMPLE && ThreadLocalRandom.current().nextDouble() < sampleRatio);
+        if (replaceOldest) {
+            Task evicted = queue.poll();
+            if (evicted != null) {
+                inFlight.remove(evicted.command);
+                dropped.increment();
+            }
+            if (queue.offer(task)) {
+                submitted.increment();
+                return true;
+            }
+        }
+        inFlight.remove(command);
+        dropped.increment();
+        return false;
+    }
+
+    private void runWorker() {
+        while (true) {
+            List<Task> batch;
+            try {
+                batch = nextBatch();
+            } catch (InterruptedException e) {
+                return;
+            }
+            long start = System.nanoTime();
+            for (Task task : batch) {
+                totalWaitNanos.add(start - task.enqueuedNanos);
+            }
+            try {
+                if (batch.size() == 1) {
+                    Task task = batch.get(0);
+                    LLMVerdict verdict = LLMAnalysis.analyzeVerdict(task.command, task.callstack);
+                    if (verdict == null) {
+                        // 与批量路径一致：调用失败不回写评分，下次出现时重新入队
+                        failed.increment();
+                    } else {
+                        deliver(task, verdict.getScore());
+                    }
+                } else {
+                    runBatch(batch);
+                }
+            } catch (Throwable t) {
+                failed.add(batch.size());
+                RaspLoggerHelper.error("LLM异步分析失败", t);
+            } finally {
+                long elapsed = System.nanoTime() - start;
+                totalAnalyzeNanos.add(elapsed);
+                analyzeRuns.increment();
+                maxAnalyzeNanos.accumulateAndGet(elapsed, Math::max);
+                for (Task task : batch) {
+                    inFlight.remove(task.command);
+                }
+            }
+        }
+    }
+
+    /**
+     * 阻塞等待第一条任务，再在批量窗口内继续收集，直到达到 batchSize 或窗口结束
+     */
+    private List<Task> nextBatch() throws InterruptedException {
+        List<Task> batch = new ArrayList<>(batchSize);
+        batch.add(queue.take());
+        if (batchSize == 1) {
+            return batch;
+        }
+        long deadline = System.nanoTime() + batchWindowNanos;
+        while (batch.size() < batchSize) {
+            if (queue.drainTo(batch, batchSize - batch.size()) > 0) {
+                continue;
+            }
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                break;
+            }
+            Task task = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (task == null) {
+                break;
+            }
+            batch.add(task);
+        }
+        return batch;
+    }
+
+    private void runBatch(List<Task> batch) {
+        List<String> commands = new ArrayList<>(batch.size());
+        List<String> callstacks = new ArrayList<>(batch.size());
+        for (Task task : batch) {
+            commands.add(task.command);
+            callstacks.add(task.callstack);
+        }
+        batches.increment();
+        List<LLMVerdict> verdicts = LLMAnalysis.analyzeBatch(commands, callstacks);
+        for (int i = 0; i < batch.size(); i++) {
+            LLMVerdict verdict = verdicts == null ? null : verdicts.get(i);
+            if (verdict == null) {
+                // 未拿到该条结论，不回写评分，下次出现时重新入队
+                failed.increment();
+            } else {
+                deliver(batch.get(i), verdict.getScore());
+            }
+        }
+    }
+
+    private void deliver(Task task, int score) {
+        if (task.onScore != null) {
+            task.onScore.accept(score);
+        }
+        completed.increment();
+    }
+
+    /** 当前队列深度 */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /** 排队中与分析中的任务数 */
+    public int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    public long getSubmittedCount() {
+        return submitted.sum();
+    }
+
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    public long getCompletedCount() {
+        return completed.sum();
+    }
+
+    public long getFailedCount() {
+        return failed.sum();
+    }
+
+    /** 已发送的批量请求数 */
+    public long getBatchCount() {
+        return batches.sum();
+    }
+
+    /** 工作线程每次模型调用的平均耗时（毫秒），与最大耗时同一口径 */
+    public double getAverageAnalyzeMillis() {
+        long n = analyzeRuns.sum();
+        return n == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalAnalyzeNanos.sum() / n) / 1000.0;
+    }
+
+    /** 工作线程最大分析耗时（毫秒） */
+    public double getMaxAnalyzeMillis() {
+        return TimeUnit.NANOSECONDS.toMicros(maxAnalyzeNanos.get()) / 1000.0;
+    }
+
+    /** 任务平均排队耗时（毫秒） */
+    public double getAverageWaitMillis() {
+        long n = completed.sum() + failed.sum();
+        return n == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalWaitNanos.sum() / n) / 1000.0;
+    }
+
+    @Override
+    public String toString() {
+        return "LLMAnalysisQueue{depth=" + getQueueDepth() + ", submitted=" + getSubmittedCount()
+                + ", dropped=" + getDroppedCount() + ", completed=" + getCompletedCount()
+                + ", failed=" + getFailedCount() + ", budget=" + LLMRateLimiter.getInstance()
+                + ", avgMs=" + getAverageAnalyzeMillis()
+                + ", maxMs=" + getMaxAnalyzeMillis() + "}";
+    }
+}
@@ -0,0 +1,312 @@
+package com.butler.service;
+
+import com.alibaba.dashscope.aigc.generation.GenerationParam;
+import com.alibaba.dashscope.aigc.generation.GenerationResult;
+import com.alibaba.dashscope.common.Status;
+import com.alibaba.dashscope.exception.ApiException;
+import com.alibaba.dashscope.exception.InputRequiredException;
+import com.alibaba.dashscope.exception.NoApiKeyException;
+import com.butler.helper.RaspLoggerHelper;
+import com.butler.metrics.RaspMetrics;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 共享的大模型客户端：超时、有限重试与熔断
+ *
+ * - 全进程共用一个 {@link ModelEndpoint}（默认 {@link DashScopeEndpoint}，连接池复用），不再每条命令新建客户端；
+ * - 连接 / 读 / 写超时由接口实现负责，接口变慢时请求按时失败，不会无限占住分析线程；
+ * - 网络错误、超时与 5xx 最多重试 rasp.llm.maxRetries 次，间隔为带全抖动的指数退避；
+ *   限流（429）不重试，交给 {@link LLMRateLimiter} 退避，其余 4xx 直接失败；
+ * - 熔断：连续 rasp.llm.breakerFailures 次失败（重试用尽后计一次）后打开，rasp.llm.breakerOpenSeconds 内跳过分析；
+ *   到期后半开，只放行一个探测请求，成功则关闭，失败则重新打开。熔断打开时 LLMAnalysisQueue 不再入队新任务。
+ *
+ * 配置（JVM 系统属性）：
+ * - rasp.llm.endpoint           模型接口实现类（可以是应用 classpath 上的类），默认 DashScopeEndpoint（其超时配置见该类）
+ * - rasp.llm.maxRetries         最大重试次数，默认 2
+ * - rasp.llm.retryBaseMs        重试退避基数，默认 200
+ * - rasp.llm.breakerFailures    熔断阈值，默认 5
+ * - rasp.llm.breakerOpenSeconds 熔断持续时间，默认 30
+ */
+public class LLMClient {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    /**
+     * 熔断打开时拒绝请求
+     */
+    public static class CircuitOpenException extends RuntimeException {
+        CircuitOpenException() {
+            super("LLM circuit breaker is open, analysis skipped");
+        }
+    }
+
+    private static final LLMClient INSTANCE = new LLMClient(
+            Integer.getInteger("rasp.llm.maxRetries", 2),
+            Long.getLong("rasp.llm.retryBaseMs", 200L),
+            Integer.getInteger("rasp.llm.breakerFailures", 5),
+            Long.getLong("rasp.llm.breakerOpenSeconds", 30L));
+
+    /** 模型接口在第一次真正调用时才创建，入队线程查询熔断状态不会加载 SDK */
+    private volatile ModelEndpoint endpoint;
+
+    private final int maxRetries;
+    private final long retryBaseMillis;
+    private final int failureThreshold;
+    private final long openNanos;
+
+    /* 熔断状态，状态切换在 this 锁内完成 */
+    private volatile State state = State.CLOSED;
+    private volatile long stateSince = System.nanoTime();
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder opens = new LongAdder();
+
+    LLMClient(int maxRetries, long retryBaseMillis, int failureThreshold, long openSeconds) {
+        this.maxRetries = Math.max(0, maxRetries);
+        this.retryBaseMillis = Math.max(1, retryBaseMillis);
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openNanos = TimeUnit.SECONDS.toNanos(Math.max(1, openSeconds));
+    }
+
+    public static LLMClient getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 熔断是否拒绝新请求（打开且未到探测时间，或半开探测进行中）
+     */
+    public boolean isRejecting() {
+        State s = state;
+        return s == State.HALF_OPEN || (s == State.OPEN && System.nanoTime() - stateSince < openNanos);
+    }
+
+    /** 入队前因熔断跳过的分析，计入拒绝次数 */
+    public void recordRejected() {
+        rejected.increment();
+    }
+
+    /**
+     * 发送一次生成请求
+     * @throws CircuitOpenException 熔断打开
+     * @throws ApiException         重试用尽或不可重试的错误
+     */
+    public GenerationResult call(GenerationParam param)
+            throws NoApiKeyException, InputRequiredException {
+        boolean probe = acquire();
+        int attempts = probe ? 1 : maxRetries + 1;
+        for (int attempt = 1; ; attempt++) {
+            long start = System.nanoTime();
+            boolean failed = true;
+            try {
+                GenerationResult result = getEndpoint().call(param);
+                failed = false;
+                onSuccess();
+                LLMRateLimiter.getInstance().onSuccess();
+                return result;
+            } catch (ApiException e) {
+                if (isThrottled(e)) {
+                    LLMRateLimiter.getInstance().onThrottled();
+                }
+                if (!isRetryable(e)) {
+                    // 请求本身的问题（参数、鉴权、限流），接口是可达的，不计入熔断
+                    onSuccess();
+                    throw e;
+                }
+                if (attempt >= attempts) {
+                    onFailure(e);
+                    throw e;
+                }
+                retries.increment();
+                RaspLoggerHelper.warn("LLM request failed (" + describe(e) + "), retry " + attempt + "/" + maxRetries);
+                sleepBeforeRetry(attempt);
+            } catch (NoApiKeyException | InputRequiredException e) {
+                onSuccess();
+                throw e;
+            } catch (RuntimeException e) {
+                onFailure(e);
+                throw e;
+            } finally {
+                RaspMetrics.getInstance().recordLlmCall(System.nanoTime() - start, failed);
+            }
+        }
+    }
+
+    /**
+     * 当前模型接口，未设置时按 rasp.llm.endpoint 创建（默认 {@link DashScopeEndpoint}）
+     */
+    public ModelEndpoint getEndpoint() {
+        ModelEndpoint e = endpoint;
+        if (e == null) {
+            synchronized (this) {
+                e = endpoint;
+                if (e == null) {
+                    e = createEndpoint(System.getProperty("rasp.llm.endpoint"));
+                    endpoint = e;
+                    RaspLoggerHelper.info("LLM endpoint: " + e);
+                }
+            }
+        }
+        return e;
+    }
+
+    /**
+     * 替换模型接口（嵌入、压测或离线测试时使用），熔断状态保持不变
+     */
+    public void setEndpoint(ModelEndpoint endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    private static ModelEndpoint createEndpoint(String className) {
+        if (className == null || className.isEmpty()) {
+            return new DashScopeEndpoint();
+        }
+        try {
+            return (ModelEndpoint) loadEndpointClass(className).getConstructor().newInstance();
+        } catch (ReflectiveOperationException | ClassCastException e) {
+            throw new IllegalStateException("Cannot create LLM endpoint " + className, e);
+        }
+    }
+
+    /**
+     * 本类由启动类加载器加载（agent jar 追加在启动类路径上），Class.forName(name) 只能找到 agent jar 内的类；
+     * 依次尝试线程上下文类加载器与系统类加载器，应用提供的实现也能使用
+     */
+    private static Class<?> loadEndpointClass(String className) throws ClassNotFoundException {
+        ClassLoader[] loaders = {Thread.currentThread().getContextClassLoader(), ClassLoader.getSystemClassLoader()};
+        for (ClassLoader loader : loaders) {
+            if (loader == null) {
+                continue;
+            }
+            try {
+                return Class.forName(className, true, loader);
+            } catch (ClassNotFoundException ignored) {
+                // 尝试下一个类加载器
+            }
+        }
+        return Class.forName(className);
+    }
+
+    /**
+     * 获取调用许可
+     * @return 是否为半开状态的探测请求
+     */
+    private boolean acquire() {
+        if (state == State.CLOSED) {
+            return false;
+        }
+        synchronized (this) {
+            if (state == State.OPEN && System.nanoTime() - stateSince >= openNanos) {
+                transition(State.HALF_OPEN);
+                RaspLoggerHelper.info("LLM circuit breaker half-open, sending probe request");
+                return true;
+            }
+            if (state != State.CLOSED) {
+                rejected.increment();
+                throw new CircuitOpenException();
+            }
+            return false;
+        }
+    }
+
+    private void onSuccess() {
+        consecutiveFailures.set(0);
+        if (state != State.CLOSED) {
+            synchronized (this) {
+                if (state != State.CLOSED) {
+                    transition(State.CLOSED);
+                    RaspLoggerHelper.info("LLM circuit breaker closed");
+                }
+            }
+        }
+    }
+
+    private void onFailure(RuntimeException e) {
+        int failures = consecutiveFailures.incrementAndGet();
+        if (state == State.HALF_OPEN || (state == State.CLOSED && failures >= failureThreshold)) {
+            synchronized (this) {
+                if (state != State.OPEN) {
+                    transition(State.OPEN);
+                    opens.increment();
+                    RaspLoggerHelper.warn("LLM circuit breaker opened after " + failures
+                            + " consecutive failures (" + describe(e) + "), skipping analysis for "
+                            + TimeUnit.NANOSECONDS.toSeconds(openNanos) + "s");
+                }
+            }
+        }
+    }
+
+    private void transition(State next) {
+        state = next;
+        stateSince = System.nanoTime();
+    }
+
+    private void sleepBeforeRetry(int attempt) {
+        // 全抖动：在 [0, base * 2^(attempt-1)] 内随机，避免多个分析线程同时重试
+        long cap = retryBaseMillis << Math.min(attempt - 1, 10);
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(cap + 1));
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** 网络错误（SDK 以 statusCode -1 表示，含超时）与 5xx 可重试 */
+    private static boolean isRetryable(ApiException e) {
+        Status status = e.getStatus();
+        return status == null || status.getStatusCode() < 0 || status.getStatusCode() >= 500;
+    }
+
+    /** HTTP 429 或错误码为 Throttling.*（如 Throttling.RateQuota） */
+    private static boolean isThrottled(ApiException e) {
+        Status status = e.getStatus();
+        if (status == null) {
+            return false;
+        }
+        return status.getStatusCode() == 429
+                || (status.getCode() != null && status.getCode().startsWith("Throttling"));
+    }
+
+    private static String describe(RuntimeException e) {
+        if (e instanceof ApiException && ((ApiException) e).getStatus() != null) {
+            Status status = ((ApiException) e).getStatus();
+            return status.getStatusCode() + " " + status.getCode();
+        }
+        return e.getClass().getSimpleName();
+    }
+
+    /** 熔断状态 */
+    public State getState() {
+        return state;
+    }
+
+    /** 处于当前熔断状态的时长（毫秒） */
+    public long getStateMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - stateSince);
+    }
+
+    public int getConsecutiveFailures() {
+        return consecutiveFailures.get();
+    }
+
+    /** 重试次数 */
+    public long getRetryCount() {
+        return retries.sum();
+    }
+
+    /** 熔断拒绝的分析次数 */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    /** 熔断打开次数 */
+    public long getOpenCount() {
+        return opens.sum();
+    }
+}
@@ -0,0 +1,265 @@
+package com.butler.service;
+
+import com.butler.helper.RaspLoggerHelper;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LLM 分析预算：令牌桶限流 + 自适应采样
+ *
+ * 在入队前（进程启动线程上）决定一条命令是否送去分析，被拒绝的命令不采集调用栈、不入队：
+ * 1. 采样：按命令"形状"（数字串归一为 #，例如 convert img123.png 与 convert img456.png 形状相同）判断是否首次出现，
+ *    首次出现的形状总是分析，重复的形状按当前采样率抽样，未抽中计入 sampled；
+ * 2. 限流：每秒、每分钟两个令牌桶，都有令牌时才分析，否则计入 dropped；
+ * 3. 退避：模型接口返回限流错误（HTTP 429 / Throttling）后暂停分析，暂停时长从 1s 起翻倍，最长 60s，调用成功后复位。
+ *
+ * 自适应：每 10s 一个窗口，窗口内出现过限流拒绝或退避时重复形状的采样率减半（不低于 rasp.llm.repeatSampleMin），
+ * 否则翻倍恢复，最高为 rasp.llm.repeatSampleRatio。于是分析开销由预算决定，而不随进程启动量增长。
+ *
+ * 配置（JVM 系统属性）：
+ * - rasp.llm.ratePerSecond     每秒最多分析条数，默认 2，&lt;= 0 表示不限
+ * - rasp.llm.ratePerMinute     每分钟最多分析条数，默认 60，&lt;= 0 表示不限
+ * - rasp.llm.repeatSampleRatio 重复形状的采样率上限，默认 0.1
+ * - rasp.llm.repeatSampleMin   重复形状的采样率下限，默认 0.01
+ */
+public class LLMRateLimiter {
+
+    private static final int SEEN_SLOTS = 1 << 14;
+    private static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(10);
+    private static final long BACKOFF_MIN_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long BACKOFF_MAX_NANOS = TimeUnit.SECONDS.toNanos(60);
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private static final LLMRateLimiter INSTANCE = new LLMRateLimiter(
+            doubleProperty("rasp.llm.ratePerSecond", 2),
+            doubleProperty("rasp.llm.ratePerMinute", 60),
+            doubleProperty("rasp.llm.repeatSampleRatio", 0.1),
+            doubleProperty("rasp.llm.repeatSampleMin", 0.01));
+
+    /**
+     * 令牌桶，由外层锁保护。
+     * 容量至少为 1：小数预算（如每秒 0.5 条）按预算速率补充，每攒满一个令牌放行一次。
+     */
+    private static final class TokenBucket {
+        private final double capacity;
+        private final double tokensPerNano;
+        private double tokens;
+        private long last;
+
+        TokenBucket(double perPeriod, long periodNanos, long now) {
+            this.capacity = perPeriod <= 0 ? 0 : Math.max(1, perPeriod);
+            this.tokensPerNano = perPeriod / periodNanos;
+            this.tokens = capacity;
+            this.last = now;
+        }
+
+        boolean available(long now) {
+            if (capacity <= 0) {
+                return true;
+            }
+            tokens = Math.min(capacity, tokens + (now - last) * tokensPerNano);
+            last = now;
+            return tokens >= 1;
+        }
+
+        void take() {
+            if (capacity > 0) {
+                tokens -= 1;
+            }
+        }
+    }
+
+    private final TokenBucket perSecond;
+    private final TokenBucket perMinute;
+    private final double maxRepeatRatio;
+    private final double minRepeatRatio;
+    private volatile double repeatRatio;
+
+    /** 已分析过的命令形状（直接映射，冲突时视为首次出现） */
+    private final AtomicLongArray seen = new AtomicLongArray(SEEN_SLOTS);
+
+    /* 以下字段由 this 锁保护 */
+    private long backoffNanos;
+    private long backoffUntil;
+    private boolean pressure;
+    private volatile long windowStart;
+    private volatile boolean backingOff;
+
+    private final LongAdder admitted = new LongAdder();
+    private final LongAdder sampled = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder throttled = new LongAdder();
+
+    LLMRateLimiter(double perSecond, double perMinute, double maxRepeatRatio, double minRepeatRatio) {
+        long now = System.nanoTime();
+        this.perSecond = new TokenBucket(perSecond, TimeUnit.SECONDS.toNanos(1), now);
+        this.perMinute = new TokenBucket(perMinute, TimeUnit.MINUTES.toNanos(1), now);
+        this.maxRepeatRatio = maxRepeatRatio;
+        this.minRepeatRatio = Math.min(minRepeatRatio, maxRepeatRatio);
+        this.repeatRatio = maxRepeatRatio;
+        this.windowStart = now;
+    }
+
+    public static LLMRateLimiter getInstance() {
+        return INSTANCE;
+    }
+
+    /** 在进程启动路径上的静态初始化中解析，取值无效时记录警告并使用默认值，不能抛出 */
+    private static double doubleProperty(String key, double defaultValue) {
+        String value = System.getProperty(key);
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            RaspLoggerHelper.warn("Invalid " + key + ": " + value + ", using " + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * 是否分析该命令，返回 true 时已扣除预算
+     */
+    public boolean tryAdmit(String command) {
+        long now = System.nanoTime();
+        if (now - windowStart >= WINDOW_NANOS) {
+            adapt(now);
+        }
+
+        long shape = shapeOf(command);
+        int slot = (int) (mix(shape) & (SEEN_SLOTS - 1));
+        boolean firstSeen = seen.get(slot) != shape;
+        if (!firstSeen && ThreadLocalRandom.current().nextDouble() >= repeatRatio) {
+            sampled.increment();
+            return false;
+        }
+        if (!acquire(now)) {
+            dropped.increment();
+            return false;
+        }
+        seen.lazySet(slot, shape);
+        admitted.increment();
+        return true;
+    }
+
+    /**
+     * 模型接口返回限流错误
+     */
+    public synchronized void onThrottled() {
+        backoffNanos = backoffNanos == 0 ? BACKOFF_MIN_NANOS : Math.min(BACKOFF_MAX_NANOS, backoffNanos * 2);
+        backoffUntil = System.nanoTime() + backoffNanos;
+        backingOff = true;
+        pressure = true;
+        throttled.increment();
+        RaspLoggerHelper.warn("LLM API throttled, pausing analysis for "
+                + TimeUnit.NANOSECONDS.toMillis(backoffNanos) + "ms");
+    }
+
+    /**
+     * 模型调用成功，复位退避
+     */
+    public void onSuccess() {
+        if (!backingOff) {
+            return;
+        }
+        synchronized (this) {
+            backoffNanos = 0;
+            backingOff = false;
+        }
+    }
+
+    private synchronized boolean acquire(long now) {
+        if (backingOff && now - backoffUntil < 0) {
+            pressure = true;
+            return false;
+        }
+        // 两个桶都先补充令牌，再判断
+        boolean second = perSecond.available(now);
+        boolean minute = perMinute.available(now);
+        if (!second || !minute) {
+            pressure = true;
+            return false;
+        }
+        perSecond.take();
+        perMinute.take();
+        return true;
+    }
+
+    private synchronized void adapt(long now) {
+        if (now - windowStart < WINDOW_NANOS) {
+            return;
+        }
+        double previous = repeatRatio;
+        repeatRatio = pressure ? Math.max(minRepeatRatio, previous / 2) : Math.min(maxRepeatRatio, previous * 2);
+        if (repeatRatio != previous) {
+            RaspLoggerHelper.info("LLM repeat sample ratio " + previous + " -> " + repeatRatio);
+        }
+        pressure = false;
+        windowStart = now;
+    }
+
+    /**
+     * 命令形状：连续数字归一为一个 #，其余字符原样参与哈希
+     */
+    static long shapeOf(String command) {
+        long h = FNV_OFFSET;
+        boolean inDigits = false;
+        for (int i = 0, n = command.length(); i < n; i++) {
+            char c = command.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (inDigits) {
+                    continue;
+                }
+                inDigits = true;
+                c = '#';
+            } else {
+                inDigits = false;
+            }
+            h = (h ^ c) * FNV_PRIME;
+        }
+        return h;
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /** 通过预算、送去分析的条数 */
+    public long getAdmittedCount() {
+        return admitted.sum();
+    }
+
+    /** 重复形状未被抽中而跳过的条数 */
+    public long getSampledCount() {
+        return sampled.sum();
+    }
+
+    /** 超出令牌桶或退避中被丢弃的条数 */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /** 模型接口返回限流错误的次数 */
+    public long getThrottledCount() {
+        return throttled.sum();
+    }
+
+    /** 当前重复形状的采样率 */
+    public double getRepeatSampleRatio() {
+        return repeatRatio;
+    }
+
+    @Override
+    public String toString() {
+        return "LLMRateLimiter{admitted=" + getAdmittedCount() + ", sampled=" + getSampledCount()
+                + ", dropped=" + getDroppedCount() + ", throttled=" + getThrottledCount()
+                + ", repeatRatio=" + getRepeatSampleRatio() + "}";
+    }
+}
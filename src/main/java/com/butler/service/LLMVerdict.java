@@ -0,0 +1,191 @@
+package com.butler.service;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 大模型分析结论
+ *
+ * 对应 PromptUtil.GUIDELINES_TEMPLATE 要求的输出结构：score / conclusion / parameters / callstack。
+ * 优先按 JSON 解析模型回复（兼容 ```json 代码块和前后说明文字），解析失败时退化为宽松的文本解析，只提取评分。
+ */
+public class LLMVerdict {
+
+    /** 宽松解析：score: 9 / "score"：9 / 评分：9 */
+    private static final Pattern SCORE_FIELD = Pattern.compile("(?i)(?:\"?score\"?|评分)\\s*[:：]\\s*\"?(\\d{1,2})");
+    /** 宽松解析：9分 / 9/10 */
+    private static final Pattern SCORE_SUFFIX = Pattern.compile("(?<!\\d)(\\d{1,2})\\s*(?:分|/\\s*10)");
+
+    private final int score;
+    private final String conclusion;
+    private final Map<String, String> parameters;
+    private final List<String> callstack;
+    /** 是否由 JSON 结构解析得到 */
+    private final boolean structured;
+
+    public LLMVerdict(int score, String conclusion, Map<String, String> parameters, List<String> callstack, boolean structured) {
+        this.score = Math.max(0, Math.min(10, score));
+        this.conclusion = conclusion == null ? "" : conclusion;
+        this.parameters = parameters == null ? Collections.<String, String>emptyMap() : Collections.unmodifiableMap(parameters);
+        this.callstack = callstack == null ? Collections.<String>emptyList() : Collections.unmodifiableList(callstack);
+        this.structured = structured;
+    }
+
+    /**
+     * 解析模型回复
+     * @param content 模型回复原文
+     * @return 解析结果，无法提取评分时评分为 0
+     */
+    public static LLMVerdict parse(String content) {
+        if (content == null) {
+            return new LLMVerdict(0, "", null, null, false);
+        }
+        LLMVerdict verdict = parseJson(content);
+        return verdict != null ? verdict : parseLenient(content);
+    }
+
+    /**
+     * 解析批量分析的回复：JSON 数组，元素带 index 字段（从 1 开始），缺少 index 时按数组顺序对应
+     * @param content 模型回复原文
+     * @param expected 提交的命令条数
+     * @return 长度为 expected 的列表，未能解析的位置为 null
+     */
+    public static List<LLMVerdict> parseBatch(String content, int expected) {
+        List<LLMVerdict> verdicts = new ArrayList<>(Collections.<LLMVerdict>nCopies(expected, null));
+        if (content == null) {
+            return verdicts;
+        }
+        int start = content.indexOf('[');
+        int end = content.lastIndexOf(']');
+        if (start < 0 || end <= start) {
+            return verdicts;
+        }
+        try {
+            JsonElement root = JsonParser.parseString(content.substring(start, end + 1));
+            if (!root.isJsonArray()) {
+                return verdicts;
+            }
+            JsonArray arr = root.getAsJsonArray();
+            for (int i = 0; i < arr.size(); i++) {
+                JsonElement el = arr.get(i);
+                if (!el.isJsonObject()) {
+                    continue;
+                }
+                JsonObject obj = el.getAsJsonObject();
+                int slot = i;
+                if (obj.has("index") && obj.get("index").isJsonPrimitive()) {
+                    try {
+                        slot = Integer.parseInt(obj.get("index").getAsString().trim()) - 1;
+                    } catch (NumberFormatException ignored) {
+                        // index 不是数字时按顺序对应
+                    }
+                }
+                if (slot >= 0 && slot < expected && verdicts.get(slot) == null) {
+                    verdicts.set(slot, fromJson(obj));
+                }
+            }
+        } catch (RuntimeException e) {
+            // 整体不是合法 JSON，全部视为缺失
+        }
+        return verdicts;
+    }
+
+    private static LLMVerdict parseJson(String content) {
+        int start = content.indexOf('{');
+        int end = content.lastIndexOf('}');
+        if (start < 0 || end <= start) {
+            return null;
+        }
+        try {
+            JsonElement root = JsonParser.parseString(content.substring(start, end + 1));
+            if (!root.isJsonObject()) {
+                return null;
+            }
+            return fromJson(root.getAsJsonObject());
+        } catch (RuntimeException e) {
+            // JSON 不完整或格式不符，交给宽松解析
+            return null;
+        }
+    }
+
+    private static LLMVerdict fromJson(JsonObject obj) {
+        try {
+            JsonElement scoreEl = obj.get("score");
+            if (scoreEl == null || !scoreEl.isJsonPrimitive()) {
+                return null;
+            }
+            int score = (int) Math.round(Double.parseDouble(scoreEl.getAsString().trim()));
+
+            String conclusion = obj.has("conclusion") && obj.get("conclusion").isJsonPrimitive()
+                    ? obj.get("conclusion").getAsString() : "";
+
+            Map<String, String> parameters = new LinkedHashMap<>();
+            if (obj.has("parameters") && obj.get("parameters").isJsonObject()) {
+                for (Map.Entry<String, JsonElement> e : obj.getAsJsonObject("parameters").entrySet()) {
+                    JsonElement v = e.getValue();
+                    parameters.put(e.getKey(), v.isJsonPrimitive() ? v.getAsString() : v.toString());
+                }
+            }
+
+            List<String> callstack = new ArrayList<>();
+            if (obj.has("callstack") && obj.get("callstack").isJsonArray()) {
+                JsonArray arr = obj.getAsJsonArray("callstack");
+                for (JsonElement e : arr) {
+                    callstack.add(e.isJsonPrimitive() ? e.getAsString() : e.toString());
+                }
+            }
+            return new LLMVerdict(score, conclusion, parameters, callstack, true);
+        } catch (RuntimeException e) {
+            // 字段类型不符
+            return null;
+        }
+    }
+
+    private static LLMVerdict parseLenient(String content) {
+        int score = 0;
+        Matcher m = SCORE_FIELD.matcher(content);
+        if (m.find()) {
+            score = Integer.parseInt(m.group(1));
+        } else {
+            m = SCORE_SUFFIX.matcher(content);
+            if (m.find()) {
+                score = Integer.parseInt(m.group(1));
+            }
+        }
+        return new LLMVerdict(score, content.trim(), null, null, false);
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    public String getConclusion() {
+        return conclusion;
+    }
+
+    public Map<String, String> getParameters() {
+        return parameters;
+    }
+
+    public List<String> getCallstack() {
+        return callstack;
+    }
+
+    public boolean isStructured() {
+        return structured;
+    }
+
+    @Override
+    public String toString() {
+        return "LLMVerdict{score=" + score + ", structured=" + structured + ", conclusion=" + conclusion + "}";
+    }
+}
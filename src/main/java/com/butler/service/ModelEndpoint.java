@@ -0,0 +1,22 @@
+package com.butler.service;
+
+import com.alibaba.dashscope.aigc.generation.GenerationParam;
+import com.alibaba.dashscope.aigc.generation.GenerationResult;
+import com.alibaba.dashscope.exception.InputRequiredException;
+import com.alibaba.dashscope.exception.NoApiKeyException;
+
+/**
+ * 大模型接口抽象，{@link LLMClient} 的超时、重试与熔断作用于任意实现
+ *
+ * 默认实现为 {@link DashScopeEndpoint}。可通过 rasp.llm.endpoint 指定实现类（需有无参构造器），
+ * 或在嵌入 / 压测时调用 {@link LLMClient#setEndpoint(ModelEndpoint)} 替换。
+ * 实现需要线程安全；错误以 {@link com.alibaba.dashscope.exception.ApiException} 抛出，
+ * 其中的 HTTP 状态码决定是否重试、是否计入熔断。
+ */
+public interface ModelEndpoint {
+
+    /**
+     * 发送一次生成请求
+     */
+    GenerationResult call(GenerationParam param) throws NoApiKeyException, InputRequiredException;
+}
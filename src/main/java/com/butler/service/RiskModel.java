@@ -0,0 +1,281 @@
+package com.butler.service;
+
+import com.butler.helper.RaspLoggerHelper;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * 本地风险评分模型：哈希 n-gram 线性模型（逻辑回归）
+ *
+ * 位于黑名单与 LLM 之间的一层：通过黑名单的命令先在进程内打分（微秒级），得到与 LLM 相同的 0-10 分，
+ * 只有落在 [rasp.risk.low, rasp.risk.high] 之间的"拿不准"的命令才送去 LLM 分析。
+ *
+ * 特征（哈希到 2^bits 维，不保存词表）：
+ * - 命令 token 一元 / 二元组（按空白切分、小写、连续数字归一）
+ * - 命令字符三元组（可识别 /dev/tcp、|sh、base64 等片段）
+ * - 调用栈每帧的 类名.方法名 与所在包
+ *
+ * 模型文件由 {@link RiskModelTool} 从 LLMAnalysis 写出的分析日志离线训练得到，加载后只读，多线程共享。
+ *
+ * 配置（JVM 系统属性）：
+ * - rasp.risk.model 模型文件路径，未设置时不启用本地评分
+ * - rasp.risk.low   低于该分数直接采用本地结论，默认 3
+ * - rasp.risk.high  高于该分数直接采用本地结论，默认 7
+ */
+public class RiskModel {
+
+    private static final int MAGIC = 0x52534B31; // "RSK1"
+    private static final int MAX_FEATURES = 1024;
+    /** 只取命令前若干字符生成字符三元组，超长参数块不会拖慢评分 */
+    private static final int MAX_TRIGRAM_CHARS = 512;
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /* 特征命名空间 */
+    private static final long NS_TOKEN = 1;
+    private static final long NS_BIGRAM = 2;
+    private static final long NS_TRIGRAM = 3;
+    private static final long NS_FRAME = 4;
+    private static final long NS_PACKAGE = 5;
+
+    public static final int LOW = Integer.getInteger("rasp.risk.low", 3);
+    public static final int HIGH = Integer.getInteger("rasp.risk.high", 7);
+
+    private final int bits;
+    final float[] weights;
+    float bias;
+
+    RiskModel(int bits) {
+        if (bits < 10 || bits > 26) {
+            throw new IllegalArgumentException("bits must be in [10, 26]: " + bits);
+        }
+        this.bits = bits;
+        this.weights = new float[1 << bits];
+    }
+
+    private static final class Holder {
+        static final RiskModel DEFAULT = loadDefault();
+    }
+
+    /**
+     * rasp.risk.model 指定的模型，未配置或加载失败时返回 null
+     */
+    public static RiskModel getDefault() {
+        return Holder.DEFAULT;
+    }
+
+    private static RiskModel loadDefault() {
+        String path = System.getProperty("rasp.risk.model");
+        if (path == null || path.isEmpty()) {
+            return null;
+        }
+        try {
+            RiskModel model = load(new File(path));
+            RaspLoggerHelper.info("Local risk model loaded: " + path + " (bits=" + model.bits
+                    + ", escalate " + LOW + ".." + HIGH + " to LLM)");
+            return model;
+        } catch (IOException | RuntimeException e) {
+            RaspLoggerHelper.error("加载本地风险模型失败: " + path, e);
+            return null;
+        }
+    }
+
+    /**
+     * 风险评分
+     * @param command 命令字符串
+     * @param callstack 调用栈，每行一帧，可为 null
+     * @return 0-10
+     */
+    public int score(String command, String callstack) {
+        int[] features = new int[MAX_FEATURES];
+        int n = features(command, callstack, features);
+        return toScore(logit(features, n));
+    }
+
+    /** 是否为需要交给 LLM 的边界分数 */
+    public static boolean isBorderline(int score) {
+        return score >= LOW && score <= HIGH;
+    }
+
+    double logit(int[] features, int n) {
+        double z = bias;
+        for (int i = 0; i < n; i++) {
+            z += weights[features[i]];
+        }
+        return z;
+    }
+
+    static double sigmoid(double z) {
+        return 1.0 / (1.0 + Math.exp(-z));
+    }
+
+    static int toScore(double z) {
+        return (int) Math.round(sigmoid(z) * 10);
+    }
+
+    /**
+     * 提取特征下标
+     * @param out 输出缓冲，特征数超过其长度时截断
+     * @return 特征个数
+     */
+    int features(String command, String callstack, int[] out) {
+        int n = 0;
+        int shift = 64 - bits;
+
+        // 命令 token 一元 / 二元组
+        long prev = 0;
+        long h = FNV_OFFSET;
+        boolean inToken = false;
+        boolean inDigits = false;
+        for (int i = 0, len = command.length(); i <= len && n < out.length - 1; i++) {
+            char c = i < len ? command.charAt(i) : ' ';
+            if (Character.isWhitespace(c)) {
+                if (inToken) {
+                    out[n++] = index(NS_TOKEN, h, shift);
+                    if (prev != 0) {
+                        out[n++] = index(NS_BIGRAM, prev * 31 + h, shift);
+                    }
+                    prev = h;
+                    h = FNV_OFFSET;
+                    inToken = false;
+                }
+                inDigits = false;
+                continue;
+            }
+            inToken = true;
+            if (c >= '0' && c <= '9') {
+                if (inDigits) {
+                    continue;
+                }
+                inDigits = true;
+                c = '#';
+            } else {
+                inDigits = false;
+                c = Character.toLowerCase(c);
+            }
+            h = (h ^ c) * FNV_PRIME;
+        }
+
+        // 命令字符三元组
+        int limit = Math.min(command.length(), MAX_TRIGRAM_CHARS);
+        long window = 0;
+        for (int i = 0; i < limit && n < out.length; i++) {
+            char c = Character.toLowerCase(command.charAt(i));
+            if (c >= '0' && c <= '9') {
+                c = '0';
+            }
+            window = ((window << 16) | c) & 0xFFFFFFFFFFFFL;
+            if (i >= 2) {
+                out[n++] = index(NS_TRIGRAM, window, shift);
+            }
+        }
+
+        // 调用栈帧：类名.方法名 与包名
+        if (callstack != null) {
+            int lineStart = 0;
+            for (int i = 0, len = callstack.length(); i <= len && n < out.length - 1; i++) {
+                if (i < len && callstack.charAt(i) != '\n') {
+                    continue;
+                }
+                int end = callstack.indexOf('(', lineStart);
+                if (end < 0 || end > i) {
+                    end = i;
+                }
+                int start = lineStart;
+                while (start < end && Character.isWhitespace(callstack.charAt(start))) {
+                    start++;
+                }
+                // 去掉 "at " 前缀与模块名前缀（java.base/）
+                if (callstack.startsWith("at ", start)) {
+                    start += 3;
+                }
+                int slash = callstack.lastIndexOf('/', end);
+                if (slash >= start) {
+                    start = slash + 1;
+                }
+                if (start < end) {
+                    out[n++] = index(NS_FRAME, hash(callstack, start, end), shift);
+                    int methodDot = callstack.lastIndexOf('.', end - 1);
+                    int classDot = methodDot > start ? callstack.lastIndexOf('.', methodDot - 1) : -1;
+                    if (classDot > start) {
+                        out[n++] = index(NS_PACKAGE, hash(callstack, start, classDot), shift);
+                    }
+                }
+                lineStart = i + 1;
+            }
+        }
+        return n;
+    }
+
+    private static long hash(String s, int start, int end) {
+        long h = FNV_OFFSET;
+        for (int i = start; i < end; i++) {
+            h = (h ^ s.charAt(i)) * FNV_PRIME;
+        }
+        return h;
+    }
+
+    private static int index(long namespace, long h, int shift) {
+        h ^= namespace * 0x9E3779B97F4A7C15L;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return (int) (h >>> shift);
+    }
+
+    int getBits() {
+        return bits;
+    }
+
+    /**
+     * 模型文件：magic、bits、bias、非零权重个数，随后为 (下标, 权重) 对
+     */
+    public static RiskModel load(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a RASPSimple risk model: " + file);
+            }
+            RiskModel model = new RiskModel(in.readInt());
+            model.bias = in.readFloat();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                int index = in.readInt();
+                if (index < 0 || index >= model.weights.length) {
+                    throw new IOException("Corrupt risk model, weight index out of range: " + index);
+                }
+                model.weights[index] = in.readFloat();
+            }
+            return model;
+        }
+    }
+
+    public void save(File file) throws IOException {
+        int count = 0;
+        for (float w : weights) {
+            if (w != 0) {
+                count++;
+            }
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(bits);
+            out.writeFloat(bias);
+            out.writeInt(count);
+            for (int i = 0; i < weights.length; i++) {
+                if (weights[i] != 0) {
+                    out.writeInt(i);
+                    out.writeFloat(weights[i]);
+                }
+            }
+        }
+    }
+}
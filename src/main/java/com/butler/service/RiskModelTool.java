@@ -0,0 +1,210 @@
+package com.butler.service;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 本地风险模型离线训练 / 评估工具
+ *
+ * 训练数据为 LLMAnalysis 写出的 RASPSimple_LLMAnalyze_*.log：每条记录的命令与调用栈作为输入，LLM 评分作为标签。
+ *
+ * 用法：
+ *   java -cp RASPSimple-1.0-jar-with-dependencies.jar com.butler.service.RiskModelTool train risk.model RASPSimple_LLMAnalyze_*.log
+ *   java -cp RASPSimple-1.0-jar-with-dependencies.jar com.butler.service.RiskModelTool eval  risk.model RASPSimple_LLMAnalyze_*.log
+ *
+ * train 按命令哈希留出一部分样本评估，训练完成后输出两部分的指标；eval 在给定日志上评估已有模型。
+ * 指标：与 LLM 评分的平均绝对误差、需要交给 LLM 的比例、本地直接判定的样本中与 LLM 结论相反的条数、单次评分耗时。
+ *
+ * 训练参数（JVM 系统属性）：
+ * - rasp.risk.bits    特征哈希维数（2 的幂次），默认 18
+ * - rasp.risk.epochs  训练轮数，默认 20
+ * - rasp.risk.holdout 留出比例，默认 0.2，设为 0 时全部用于训练
+ * - rasp.risk.low / rasp.risk.high 与运行时相同的边界分数
+ */
+public class RiskModelTool {
+
+    private static final String PREFIX_COMMAND = "命令：";
+    private static final String PREFIX_CALLSTACK = "调用栈：";
+    private static final String PREFIX_ANALYSIS = "分析结果：";
+    private static final String PREFIX_SCORE = "评分：";
+
+    private static final double LEARNING_RATE = 0.5;
+    private static final double L2 = 1e-6;
+    private static final int FEATURE_BUFFER = 1024;
+
+    /**
+     * 一条带 LLM 评分的样本
+     */
+    static final class Sample {
+        final String command;
+        final String callstack;
+        final int score;
+
+        Sample(String command, String callstack, int score) {
+            this.command = command;
+            this.callstack = callstack;
+            this.score = score;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3 || !("train".equals(args[0]) || "eval".equals(args[0]))) {
+            System.err.println("Usage: RiskModelTool train|eval <model-file> <llm-log>...");
+            System.exit(2);
+        }
+        List<Sample> samples = new ArrayList<>();
+        for (int i = 2; i < args.length; i++) {
+            samples.addAll(parseLog(new File(args[i])));
+        }
+        System.out.println("Loaded " + samples.size() + " scored samples from " + (args.length - 2) + " log file(s)");
+        if (samples.isEmpty()) {
+            System.exit(1);
+        }
+
+        File modelFile = new File(args[1]);
+        if ("eval".equals(args[0])) {
+            System.out.println("eval     " + evaluate(RiskModel.load(modelFile), samples));
+            return;
+        }
+
+        double holdout = Double.parseDouble(System.getProperty("rasp.risk.holdout", "0.2"));
+        List<Sample> train = new ArrayList<>();
+        List<Sample> test = new ArrayList<>();
+        for (Sample s : samples) {
+            // 按命令哈希划分，同一命令不会同时出现在训练集与留出集
+            boolean held = (s.command.hashCode() & 0x7fffffff) % 1000 < holdout * 1000;
+            (held ? test : train).add(s);
+        }
+        if (train.isEmpty()) {
+            train = test;
+            test = Collections.emptyList();
+        }
+
+        RiskModel model = train(train,
+                Integer.getInteger("rasp.risk.bits", 18),
+                Integer.getInteger("rasp.risk.epochs", 20));
+        model.save(modelFile);
+        System.out.println("Model written to " + modelFile.getAbsolutePath() + " (" + modelFile.length() + " bytes)");
+        System.out.println("train    " + evaluate(model, train));
+        if (!test.isEmpty()) {
+            System.out.println("holdout  " + evaluate(model, test));
+        }
+    }
+
+    /**
+     * 解析 LLM 分析日志，评分缺失（批量分析中未解析出结论）的记录跳过
+     */
+    static List<Sample> parseLog(File file) throws IOException {
+        List<Sample> samples = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String command = null;
+            StringBuilder callstack = null;
+            boolean inCallstack = false;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(PREFIX_COMMAND)) {
+                    command = line.substring(PREFIX_COMMAND.length());
+                    callstack = new StringBuilder();
+                    inCallstack = false;
+                } else if (command == null) {
+                    continue;
+                } else if (line.startsWith(PREFIX_CALLSTACK)) {
+                    inCallstack = true;
+                } else if (line.startsWith(PREFIX_ANALYSIS)) {
+                    inCallstack = false;
+                } else if (inCallstack) {
+                    if (callstack.length() > 0) {
+                        callstack.append('\n');
+                    }
+                    callstack.append(line);
+                } else if (line.startsWith(PREFIX_SCORE)) {
+                    try {
+                        int score = Integer.parseInt(line.substring(PREFIX_SCORE.length()).trim());
+                        if (score >= 0 && score <= 10) {
+                            samples.add(new Sample(command, callstack.toString(), score));
+                        }
+                    } catch (NumberFormatException ignored) {
+                        // "-"：批量分析中缺失的结论
+                    }
+                    command = null;
+                }
+            }
+        }
+        return samples;
+    }
+
+    /**
+     * 逻辑回归，标签为 LLM 评分 / 10（软标签），AdaGrad 步长，固定随机种子保证结果可复现
+     */
+    static RiskModel train(List<Sample> samples, int bits, int epochs) {
+        RiskModel model = new RiskModel(bits);
+        float[] gradSquares = new float[model.weights.length];
+        double biasGradSquares = 0;
+
+        // 特征只提取一次
+        int[][] features = new int[samples.size()][];
+        for (int i = 0; i < samples.size(); i++) {
+            Sample s = samples.get(i);
+            int[] buffer = new int[FEATURE_BUFFER];
+            int n = model.features(s.command, s.callstack, buffer);
+            int[] f = new int[n];
+            System.arraycopy(buffer, 0, f, 0, n);
+            features[i] = f;
+        }
+
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < samples.size(); i++) {
+            order.add(i);
+        }
+        Random random = new Random(42);
+        for (int epoch = 0; epoch < epochs; epoch++) {
+            Collections.shuffle(order, random);
+            for (int i : order) {
+                int[] f = features[i];
+                double p = RiskModel.sigmoid(model.logit(f, f.length));
+                double g = p - samples.get(i).score / 10.0;
+
+                biasGradSquares += g * g;
+                model.bias -= (float) (LEARNING_RATE * g / Math.sqrt(biasGradSquares + 1e-8));
+                for (int index : f) {
+                    double gw = g + L2 * model.weights[index];
+                    gradSquares[index] += (float) (gw * gw);
+                    model.weights[index] -= (float) (LEARNING_RATE * gw / Math.sqrt(gradSquares[index] + 1e-8));
+                }
+            }
+        }
+        return model;
+    }
+
+    static String evaluate(RiskModel model, List<Sample> samples) {
+        int escalated = 0;
+        int falseBenign = 0;
+        int falseRisky = 0;
+        long absError = 0;
+        long nanos = 0;
+        for (Sample s : samples) {
+            long start = System.nanoTime();
+            int score = model.score(s.command, s.callstack);
+            nanos += System.nanoTime() - start;
+
+            absError += Math.abs(score - s.score);
+            if (RiskModel.isBorderline(score)) {
+                escalated++;
+            } else if (score < RiskModel.LOW && s.score > RiskModel.HIGH) {
+                falseBenign++;
+            } else if (score > RiskModel.HIGH && s.score < RiskModel.LOW) {
+                falseRisky++;
+            }
+        }
+        int n = samples.size();
+        return String.format("n=%d mae=%.2f escalated=%.1f%% falseBenign=%d falseRisky=%d avgScoreMicros=%.1f",
+                n, (double) absError / n, 100.0 * escalated / n, falseBenign, falseRisky, nanos / 1000.0 / n);
+    }
+}
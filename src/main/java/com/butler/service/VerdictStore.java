@@ -0,0 +1,292 @@
+package com.butler.service;
+
+import com.butler.helper.RaspLoggerHelper;
+import com.butler.util.VerdictCache;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 主机级 LLM 结论持久化存储
+ *
+ * 同一台主机上 attach 了 RASPSimple 的多个 JVM 会对相同命令重复做 LLM 分析，且重启后结论全部丢失。
+ * 这里把 命令指纹 → 评分/结论/时间戳 写入一个内存映射的开放寻址哈希文件，多个 JVM 共享同一文件：
+ * - 读：无锁，每个槽位带序号（奇数表示写入中），读前后序号一致才认为读到完整条目；
+ * - 写：进程内 synchronized + 跨进程 FileLock 串行化，写入前后各递增一次序号；
+ * - 每个槽位另存一个与指纹无关的校验和（覆盖命令、评分、标记与时间戳），读时重新计算：
+ *   指纹碰撞、其他命令的条目，以及无锁读到的新旧混合条目都按未命中处理；
+ * - 线性探测最多 {@link #MAX_PROBES} 个槽位，探测范围满时覆盖其中最旧的条目。
+ *
+ * 存储中的低分结论会让命令跳过 LLM 分析，因此默认关闭，需显式指定路径；
+ * 文件不跟随符号链接，新建时权限为 0600，已存在的文件属于其他用户或组 / 其他用户可写时拒绝打开。
+ * 路径应位于只有运行 JVM 的用户可写的目录中，而不是全局可写的临时目录。
+ *
+ * 配置（JVM 系统属性）：
+ * - rasp.store.path       存储文件路径，未设置或为空字符串时关闭
+ * - rasp.store.slots      新建文件的槽位数（2 的幂），默认 65536
+ * - rasp.store.ttlSeconds 条目有效期（秒），默认 7 天
+ */
+public class VerdictStore {
+
+    private static final int MAGIC = 0x52415350; // "RASP"
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 64;
+    private static final int SLOT_SIZE = 40;
+    private static final int MAX_PROBES = 16;
+
+    /* 槽位内偏移 */
+    private static final int OFF_FINGERPRINT = 0;
+    private static final int OFF_SEQ = 8;
+    private static final int OFF_SCORE = 12;
+    private static final int OFF_FLAGS = 16;
+    private static final int OFF_TIMESTAMP = 24;
+    private static final int OFF_CHECKSUM = 32;
+
+    /** 结论标记：模型输出为合法 JSON */
+    public static final int FLAG_STRUCTURED = 1;
+
+    /**
+     * 存储中的结论
+     */
+    public static class Entry {
+        private final int score;
+        private final int flags;
+        private final long timestamp;
+
+        Entry(int score, int flags, long timestamp) {
+            this.score = score;
+            this.flags = flags;
+            this.timestamp = timestamp;
+        }
+
+        public int getScore() {
+            return score;
+        }
+
+        public int getFlags() {
+            return flags;
+        }
+
+        /** 写入时间（毫秒） */
+        public long getTimestamp() {
+            return timestamp;
+        }
+    }
+
+    private static final VerdictStore INSTANCE = open();
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int slots;
+    private final long ttlMillis;
+
+    private VerdictStore(FileChannel channel, MappedByteBuffer buffer, int slots, long ttlMillis) {
+        this.channel = channel;
+        this.buffer = buffer;
+        this.slots = slots;
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * 全局存储实例，未启用或打开失败时返回 null
+     */
+    public static VerdictStore getInstance() {
+        return INSTANCE;
+    }
+
+    private static VerdictStore open() {
+        String path = System.getProperty("rasp.store.path");
+        if (path == null || path.isEmpty()) {
+            return null;
+        }
+        int requested = Integer.highestOneBit(Math.max(MAX_PROBES, Integer.getInteger("rasp.store.slots", 65536)));
+        long ttlSeconds = Long.getLong("rasp.store.ttlSeconds", TimeUnit.DAYS.toSeconds(7));
+        try {
+            return open(new File(path), requested, TimeUnit.SECONDS.toMillis(ttlSeconds));
+        } catch (Exception e) {
+            RaspLoggerHelper.error("打开RASPSimple结论存储失败，将不使用持久化结论: " + path, e);
+            return null;
+        }
+    }
+
+    static VerdictStore open(File file, int requestedSlots, long ttlMillis) throws IOException {
+        Path path = file.toPath();
+        boolean posix = FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+        Set<OpenOption> options = new HashSet<>(Arrays.asList(StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, LinkOption.NOFOLLOW_LINKS));
+        FileChannel channel = posix
+                ? FileChannel.open(path, options, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")))
+                : FileChannel.open(path, options);
+        try {
+            if (posix) {
+                checkOwnership(path);
+            }
+            int slots;
+            MappedByteBuffer buffer;
+            // 初始化时锁住整个文件，避免多个 JVM 同时写文件头
+            try (FileLock ignored = channel.lock()) {
+                ByteBuffer header = ByteBuffer.allocate(12);
+                if (channel.size() >= HEADER_SIZE) {
+                    channel.read(header, 0);
+                    header.flip();
+                    int magic = header.getInt();
+                    int version = header.getInt();
+                    slots = header.getInt();
+                    if (magic != MAGIC || version != VERSION || Integer.bitCount(slots) != 1
+                            || channel.size() < HEADER_SIZE + (long) slots * SLOT_SIZE) {
+                        throw new IOException("Unrecognized verdict store format: " + file);
+                    }
+                } else {
+                    slots = requestedSlots;
+                    header.putInt(MAGIC).putInt(VERSION).putInt(slots).flip();
+                    channel.write(header, 0);
+                }
+                // READ_WRITE 映射超出文件长度时会扩展文件
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) slots * SLOT_SIZE);
+            }
+            RaspLoggerHelper.info("Verdict store opened at: " + file + " slots=" + slots);
+            return new VerdictStore(channel, buffer, slots, ttlMillis);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 只接受当前用户拥有、组与其他用户不可写的普通文件
+     */
+    private static void checkOwnership(Path path) throws IOException {
+        PosixFileAttributes attrs = Files.readAttributes(path, PosixFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        String user = System.getProperty("user.name");
+        if (!attrs.isRegularFile() || !attrs.owner().getName().equals(user)) {
+            throw new IOException("Verdict store is not a regular file owned by " + user + ": " + path);
+        }
+        Set<PosixFilePermission> permissions = attrs.permissions();
+        if (permissions.contains(PosixFilePermission.GROUP_WRITE) || permissions.contains(PosixFilePermission.OTHERS_WRITE)) {
+            throw new IOException("Verdict store is writable by group or others: " + path);
+        }
+    }
+
+    /**
+     * 查询命令的持久化结论
+     * @param command 命令字符串
+     * @return 未过期的结论，未命中返回 null
+     */
+    public Entry get(String command) {
+        String normalized = command.trim();
+        long fp = fingerprintOf(command);
+        int mask = slots - 1;
+        int start = (int) (mix(fp) & mask);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < MAX_PROBES; i++) {
+            int base = HEADER_SIZE + ((start + i) & mask) * SLOT_SIZE;
+            int seq = buffer.getInt(base + OFF_SEQ);
+            if ((seq & 1) != 0) {
+                // 其它线程/进程正在写该槽位，按未命中处理
+                continue;
+            }
+            long slotFp = buffer.getLong(base + OFF_FINGERPRINT);
+            if (slotFp == 0) {
+                return null;
+            }
+            if (slotFp != fp) {
+                continue;
+            }
+            int score = buffer.getInt(base + OFF_SCORE);
+            int flags = buffer.getInt(base + OFF_FLAGS);
+            long ts = buffer.getLong(base + OFF_TIMESTAMP);
+            long checksum = buffer.getLong(base + OFF_CHECKSUM);
+            if (buffer.getInt(base + OFF_SEQ) != seq || checksum != checksum(normalized, score, flags, ts)) {
+                continue;
+            }
+            return now - ts > ttlMillis ? null : new Entry(score, flags, ts);
+        }
+        return null;
+    }
+
+    /**
+     * 写入命令的结论
+     * @param command 命令字符串
+     * @param score LLM 评分
+     * @param flags 结论标记
+     */
+    public synchronized void put(String command, int score, int flags) {
+        long fp = fingerprintOf(command);
+        int mask = slots - 1;
+        int start = (int) (mix(fp) & mask);
+        try (FileLock ignored = channel.lock(HEADER_SIZE, (long) slots * SLOT_SIZE, false)) {
+            int target = -1;
+            long oldest = Long.MAX_VALUE;
+            for (int i = 0; i < MAX_PROBES; i++) {
+                int base = HEADER_SIZE + ((start + i) & mask) * SLOT_SIZE;
+                long slotFp = buffer.getLong(base + OFF_FINGERPRINT);
+                if (slotFp == 0 || slotFp == fp) {
+                    target = base;
+                    break;
+                }
+                long ts = buffer.getLong(base + OFF_TIMESTAMP);
+                if (ts < oldest) {
+                    oldest = ts;
+                    target = base;
+                }
+            }
+            long now = System.currentTimeMillis();
+            int seq = buffer.getInt(target + OFF_SEQ);
+            buffer.putInt(target + OFF_SEQ, seq + 1);
+            buffer.putLong(target + OFF_FINGERPRINT, fp);
+            buffer.putInt(target + OFF_SCORE, score);
+            buffer.putInt(target + OFF_FLAGS, flags);
+            buffer.putLong(target + OFF_TIMESTAMP, now);
+            buffer.putLong(target + OFF_CHECKSUM, checksum(command.trim(), score, flags, now));
+            buffer.putInt(target + OFF_SEQ, seq + 2);
+        } catch (IOException e) {
+            RaspLoggerHelper.error("写入RASPSimple结论存储失败", e);
+        }
+    }
+
+    public int getSlots() {
+        return slots;
+    }
+
+    /** 指纹 0 保留为空槽位标记 */
+    private static long fingerprintOf(String command) {
+        long fp = VerdictCache.fingerprint(command);
+        return fp == 0 ? 1 : fp;
+    }
+
+    /**
+     * 槽位校验和：与 FNV 指纹独立的乘法-旋转哈希，再混入槽位内容
+     */
+    private static long checksum(String normalized, int score, int flags, long timestamp) {
+        long h = 0x9E3779B97F4A7C15L;
+        for (int i = 0, n = normalized.length(); i < n; i++) {
+            h = Long.rotateLeft((h ^ normalized.charAt(i)) * 0xbf58476d1ce4e5b9L, 31);
+        }
+        h ^= ((long) score << 32) | (flags & 0xffffffffL);
+        h = mix(h * 0x94d049bb133111ebL) ^ timestamp;
+        return mix(h * 0xbf58476d1ce4e5b9L);
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,242 @@
+package com.butler.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.regex.Pattern;
+
+/**
+ * 黑名单多模式匹配引擎
+ *
+ * 每条规则由一个正则和若干字面量锚点组成，锚点是正则命中的必要条件（例如 /dev/tcp、nc、powershell、curl）。
+ * 所有锚点被编译进一个大小写不敏感的 Aho-Corasick 自动机：
+ * - 对命令字符串只做一次线性扫描，找出锚点命中的规则；
+ * - 只对这些候选规则执行正则，未命中任何锚点的命令（常见的放行路径）不会触发任何正则。
+ *
+ * 没有锚点的规则视为总是候选，保证语义与逐条正则匹配一致。
+ */
+public class BlacklistMatcher {
+
+    /** 自动机只对 ASCII 建转移表，非 ASCII 字符直接回到根状态（锚点均为 ASCII） */
+    private static final int ALPHABET = 128;
+
+    /**
+     * 单条黑名单规则
+     */
+    public static class Rule {
+        private final Pattern pattern;
+        private final List<String> anchors;
+
+        public Rule(Pattern pattern, String... anchors) {
+            this.pattern = pattern;
+            this.anchors = Collections.unmodifiableList(Arrays.asList(anchors));
+        }
+
+        public Pattern getPattern() {
+            return pattern;
+        }
+
+        public List<String> getAnchors() {
+            return anchors;
+        }
+    }
+
+    private final Rule[] rules;
+    /** 无锚点、每次都需要执行正则的规则下标 */
+    private final int[] alwaysRules;
+    /** goto/fail 合并后的确定性转移表：next[state * ALPHABET + c] */
+    private final int[] next;
+    /** 每个状态命中的规则下标（已沿 fail 链合并） */
+    private final int[][] outputs;
+
+    public BlacklistMatcher(List<Rule> rules) {
+        this.rules = rules.toArray(new Rule[0]);
+
+        List<int[]> trie = new ArrayList<>();
+        List<List<Integer>> out = new ArrayList<>();
+        List<Integer> always = new ArrayList<>();
+        trie.add(newNode());
+        out.add(new ArrayList<>());
+
+        // 1. 构建字典树
+        for (int r = 0; r < this.rules.length; r++) {
+            List<String> anchors = this.rules[r].getAnchors();
+            if (anchors.isEmpty()) {
+                always.add(r);
+                continue;
+            }
+            for (String anchor : anchors) {
+                int state = 0;
+                for (int i = 0; i < anchor.length(); i++) {
+                    int c = fold(anchor.charAt(i));
+                    if (c < 0) {
+                        throw new IllegalArgumentException("Non-ASCII anchor is not supported: " + anchor);
+                    }
+                    int[] node = trie.get(state);
+                    if (node[c] == 0) {
+                        node[c] = trie.size();
+                        trie.add(newNode());
+                        out.add(new ArrayList<>());
+                    }
+                    state = node[c];
+                }
+                if (!out.get(state).contains(r)) {
+                    out.get(state).add(r);
+                }
+            }
+        }
+
+        // 2. BFS 计算 fail 指针，并把 goto 补全为确定性转移
+        int size = trie.size();
+        int[] fail = new int[size];
+        this.next = new int[size * ALPHABET];
+        Queue<Integer> queue = new ArrayDeque<>();
+        for (int c = 0; c < ALPHABET; c++) {
+            int child = trie.get(0)[c];
+            next[c] = child;
+            if (child != 0) {
+                queue.add(child);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            for (int r : out.get(fail[state])) {
+                if (!out.get(state).contains(r)) {
+                    out.get(state).add(r);
+                }
+            }
+            int[] node = trie.get(state);
+            for (int c = 0; c < ALPHABET; c++) {
+                int child = node[c];
+                if (child != 0) {
+                    fail[child] = next[fail[state] * ALPHABET + c];
+                    next[state * ALPHABET + c] = child;
+                    queue.add(child);
+                } else {
+                    next[state * ALPHABET + c] = next[fail[state] * ALPHABET + c];
+                }
+            }
+        }
+
+        this.outputs = new int[size][];
+        for (int s = 0; s < size; s++) {
+            this.outputs[s] = toArray(out.get(s));
+        }
+        this.alwaysRules = toArray(always);
+    }
+
+    /**
+     * 查找第一条命中的规则（按规则定义顺序）
+     *
+     * @param s 待检测的命令字符串
+     * @return 命中的规则，未命中返回 null
+     */
+    public Rule match(CharSequence s) {
+        boolean[] candidates = null;
+        int state = 0;
+        for (int i = 0, n = s.length(); i < n; i++) {
+            int c = fold(s.charAt(i));
+            state = c < 0 ? 0 : next[state * ALPHABET + c];
+            int[] hit = outputs[state];
+            if (hit.length != 0) {
+                if (candidates == null) {
+                    candidates = new boolean[rules.length];
+                }
+                for (int r : hit) {
+                    candidates[r] = true;
+                }
+            }
+        }
+
+        if (candidates == null && alwaysRules.length == 0) {
+            return null;
+        }
+        if (candidates == null) {
+            candidates = new boolean[rules.length];
+        }
+        for (int r : alwaysRules) {
+            candidates[r] = true;
+        }
+
+        for (int r = 0; r < rules.length; r++) {
+            if (candidates[r] && rules[r].getPattern().matcher(s).find()) {
+                return rules[r];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 字节级预筛：直接在 UNIXProcess 的 prog / argBlock 上运行自动机，'\0' 视为分隔符（等同空格），不解码、不分配内存。
+     * 返回 false 表示任何规则都不可能命中，可以直接放行；返回 true 时需解码后调用 {@link #match(CharSequence)}。
+     *
+     * @param prog     以 '\0' 结尾的程序路径，可为 null
+     * @param argBlock 以 '\0' 分隔的参数块，可为 null
+     */
+    public boolean mayMatch(byte[] prog, byte[] argBlock) {
+        if (alwaysRules.length != 0) {
+            return true;
+        }
+        int state = scan(prog, 0);
+        if (state < 0) {
+            return true;
+        }
+        // prog 与 argBlock 之间按一个空格分隔（prog 以 '\0' 结尾时已扫描过该分隔符）
+        if (prog == null || prog.length == 0 || prog[prog.length - 1] != 0) {
+            state = next[state * ALPHABET + ' '];
+            if (outputs[state].length != 0) {
+                return true;
+            }
+        }
+        return scan(argBlock, state) < 0;
+    }
+
+    /**
+     * 从指定状态开始扫描字节数组
+     * @return 扫描结束时的状态，命中任一锚点时返回 -1
+     */
+    private int scan(byte[] bytes, int state) {
+        if (bytes == null) {
+            return state;
+        }
+        for (byte b : bytes) {
+            // 非 ASCII 字节回到根状态，'\0' 视为空格
+            int c = b < 0 ? -1 : fold(b == 0 ? ' ' : (char) b);
+            state = c < 0 ? 0 : next[state * ALPHABET + c];
+            if (outputs[state].length != 0) {
+                return -1;
+            }
+        }
+        return state;
+    }
+
+    public int size() {
+        return rules.length;
+    }
+
+    /** ASCII 大小写折叠，非 ASCII 返回 -1 */
+    private static int fold(char ch) {
+        if (ch >= ALPHABET) {
+            return -1;
+        }
+        if (ch >= 'A' && ch <= 'Z') {
+            return ch + ('a' - 'A');
+        }
+        return ch;
+    }
+
+    private static int[] newNode() {
+        return new int[ALPHABET];
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        int[] arr = new int[list.size()];
+        for (int i = 0; i < arr.length; i++) {
+            arr[i] = list.get(i);
+        }
+        return arr;
+    }
+}
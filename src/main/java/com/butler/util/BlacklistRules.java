@@ -0,0 +1,262 @@
+package com.butler.util;
+
+import com.butler.helper.RaspLoggerHelper;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * 黑名单规则集（支持热更新）
+ *
+ * 规则集是不可变对象（编译好的 {@link BlacklistMatcher} + 版本号），通过一个 volatile 引用发布：
+ * - 读：checkArgs 每次检测只读一次 {@link #current()}，不加锁，也不可能看到构建到一半的规则集；
+ * - 写：后台线程用 WatchService 监听规则文件，文件变化后在该线程上完整编译新规则集，成功后一次引用替换发布，
+ *   并清空结论缓存；编译失败时保留旧规则集并记录错误。
+ * - 防止误清空：解析结果为空（空文件、只有注释、编辑器先截断再写入时读到的中间状态），
+ *   或规则数不足当前文件规则集的一半时，按加载失败处理并保留当前规则集；
+ *   确需删除大量规则时，在文件中加一行 "# @allow-shrink"。
+ *
+ * 规则文件格式（UTF-8）：每行一条规则 "锚点1,锚点2 =&gt; 正则"，锚点是正则命中的必要字面量（大小写不敏感），
+ * 没有锚点时写作 " =&gt; 正则"（每次都执行该正则）；空行与 # 开头的行忽略。示例见 rules/blacklist.rules。
+ *
+ * 配置（JVM 系统属性）：
+ * - rasp.rules.file 规则文件路径，未设置时使用内置规则且不监听
+ */
+public class BlacklistRules {
+
+    private static final String SEPARATOR = "=>";
+    /** 文件变化后等待写入完成的时间，期间的多次变化合并为一次加载 */
+    private static final long DEBOUNCE_MILLIS = 200;
+    /** 允许规则数大幅减少（含清空）的文件指令 */
+    private static final Pattern ALLOW_SHRINK = Pattern.compile("(?m)^\\s*#\\s*@allow-shrink\\s*$");
+
+    /**
+     * 内置规则 —— 针对常见命令注入/反弹手法做简单匹配，每条正则附带其必要的字面量锚点
+     */
+    static final List<BlacklistMatcher.Rule> BUILTIN_RULES = Collections.unmodifiableList(java.util.Arrays.asList(
+            // Linux reads
+            new BlacklistMatcher.Rule(Pattern.compile("(?i)\\bcat\\b\\s+/etc/passwd"), "/etc/passwd"),                        // cat /etc/passwd
+            new BlacklistMatcher.Rule(Pattern.compile("(?i)\\bcat\\b\\s+[^\\r\\n]*\\b/dev/tcp\\b"), "/dev/tcp"),           // bash reverse via /dev/tcp
+            // Windows reads
+            new BlacklistMatcher.Rule(Pattern.compile("(?i)\\btype\\b\\s+(?:[A-Za-z]:\\\\|\\\\\\\\)[^\\r\\n\\s]+"), "type"), // type C:\path\file or type \\server\share\file
+            new BlacklistMatcher.Rule(Pattern.compile("(?i)\\btype\\b\\s+[A-Za-z]:\\\\Windows\\\\win\\.ini\\b"), "win.ini"),     // specific example: type C:\Windows\win.ini
+            // Common reverse-shell / remote-exec patterns (Linux & Windows)
+            new BlacklistMatcher.Rule(Pattern.compile("(?i)\\b(?:nc|ncat|netcat)\\b[^\\r\\n]{0,80}-e\\b"), "nc", "netcat"),     // nc -e ...
+            new BlacklistMatcher.Rule(Pattern.compile("(?i)\\b(?:bash|sh)\\b[^\\r\\n]{0,120}/dev/tcp\\b"), "/dev/tcp"),     // bash ... /dev/tcp (reverse shell)
+            new BlacklistMatcher.Rule(Pattern.compile("(?i)\\bpython(?:3)?\\b[^\\r\\n]{0,200}\\b(?:socket|subprocess|Popen)\\b"), "python"), // python -c "import socket/ subprocess..."
+            new BlacklistMatcher.Rule(Pattern.compile("(?i)\\bpowershell(?:\\.exe)?[^\\r\\n]{0,200}\\b(?:IEX|Invoke-Expression|Invoke-WebRequest|DownloadString)\\b"), "powershell"), // powershell IEX / download & exec
+            new BlacklistMatcher.Rule(Pattern.compile("(?i)\\bperl\\b[^\\r\\n]{0,200}-e\\b"), "perl"),                  // perl -e ...
+            new BlacklistMatcher.Rule(Pattern.compile("(?i)\\b(?:curl|wget)\\b[^\\r\\n]{0,120}\\|\\s*(?:sh|bash)\\b"), "curl", "wget") // curl ... | sh
+    ));
+
+    /**
+     * 不可变的已编译规则集
+     */
+    public static class RuleSet {
+        private final BlacklistMatcher matcher;
+        private final int version;
+        private final String source;
+        private final long loadedAt;
+
+        RuleSet(BlacklistMatcher matcher, int version, String source) {
+            this.matcher = matcher;
+            this.version = version;
+            this.source = source;
+            this.loadedAt = System.currentTimeMillis();
+        }
+
+        public BlacklistMatcher getMatcher() {
+            return matcher;
+        }
+
+        /** 规则集版本，内置规则为 1，每次成功加载递增 */
+        public int getVersion() {
+            return version;
+        }
+
+        /** 规则来源：builtin 或文件路径 */
+        public String getSource() {
+            return source;
+        }
+
+        /** 生效时间（毫秒） */
+        public long getLoadedAt() {
+            return loadedAt;
+        }
+    }
+
+    private static volatile RuleSet current = new RuleSet(new BlacklistMatcher(BUILTIN_RULES), 1, "builtin");
+
+    private static volatile long lastReloadNanos;
+    private static final LongAdder reloadFailures = new LongAdder();
+
+    static {
+        String path = System.getProperty("rasp.rules.file");
+        if (path != null && !path.isEmpty()) {
+            Path file = new File(path).getAbsoluteFile().toPath();
+            // 首次加载在初始化时同步完成，保证第一次检测即使用文件中的规则
+            reload(file);
+            startWatcher(file);
+        }
+    }
+
+    /**
+     * 当前生效的规则集
+     */
+    public static RuleSet current() {
+        return current;
+    }
+
+    /** 最近一次加载耗时（纳秒） */
+    public static long getLastReloadNanos() {
+        return lastReloadNanos;
+    }
+
+    public static long getReloadFailureCount() {
+        return reloadFailures.sum();
+    }
+
+    /**
+     * 解析并编译规则文件
+     * @throws IllegalArgumentException 规则格式或正则错误（消息中带行号）
+     */
+    static List<BlacklistMatcher.Rule> parse(BufferedReader reader) throws IOException {
+        List<BlacklistMatcher.Rule> rules = new ArrayList<>();
+        String line;
+        int lineNo = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNo++;
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                continue;
+            }
+            int sep = line.indexOf(SEPARATOR);
+            if (sep < 0) {
+                throw new IllegalArgumentException("line " + lineNo + ": missing '" + SEPARATOR + "'");
+            }
+            List<String> anchors = new ArrayList<>();
+            for (String anchor : line.substring(0, sep).split(",")) {
+                if (!anchor.trim().isEmpty()) {
+                    anchors.add(anchor.trim());
+                }
+            }
+            String regex = line.substring(sep + SEPARATOR.length()).trim();
+            try {
+                rules.add(new BlacklistMatcher.Rule(Pattern.compile(regex), anchors.toArray(new String[0])));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("line " + lineNo + ": " + e.getMessage(), e);
+            }
+        }
+        return rules;
+    }
+
+    /**
+     * 加载规则文件并发布，失败时保留当前规则集
+     */
+    static void reload(Path file) {
+        long start = System.nanoTime();
+        try {
+            String text = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+            List<BlacklistMatcher.Rule> rules = parse(new BufferedReader(new StringReader(text)));
+            checkShrink(rules.size(), ALLOW_SHRINK.matcher(text).find());
+            BlacklistMatcher matcher = new BlacklistMatcher(rules);
+            RuleSet next = new RuleSet(matcher, current.getVersion() + 1, file.toString());
+            current = next;
+            // 结论依赖规则，新规则生效后旧结论全部作废
+            ProcessCheckUtil.getVerdictCache().clear();
+            lastReloadNanos = System.nanoTime() - start;
+            RaspLoggerHelper.info("Blacklist rules loaded from: " + file + " version=" + next.getVersion()
+                    + " rules=" + matcher.size() + " in " + TimeUnit.NANOSECONDS.toMicros(lastReloadNanos) / 1000.0 + "ms");
+        } catch (IOException | RuntimeException e) {
+            reloadFailures.increment();
+            RaspLoggerHelper.error("加载RASPSimple黑名单规则失败，继续使用版本 " + current.getVersion() + ": " + file, e);
+        }
+    }
+
+    /**
+     * 新规则集为空，或比当前文件规则集少一半以上时拒绝（从内置规则切换到文件时只检查是否为空）
+     * @throws IllegalArgumentException 未声明 allow-shrink 的大幅缩减
+     */
+    private static void checkShrink(int size, boolean allowShrink) {
+        if (allowShrink) {
+            return;
+        }
+        if (size == 0) {
+            throw new IllegalArgumentException("rules file has no rules (add '# @allow-shrink' to disable the blacklist)");
+        }
+        RuleSet active = current;
+        int activeSize = active.getMatcher().size();
+        if (!"builtin".equals(active.getSource()) && size * 2 < activeSize) {
+            throw new IllegalArgumentException("rules shrink from " + activeSize + " to " + size
+                    + " (add '# @allow-shrink' if intended)");
+        }
+    }
+
+    private static void startWatcher(Path file) {
+        Path dir = file.getParent();
+        WatchService watcher;
+        try {
+            watcher = FileSystems.getDefault().newWatchService();
+            dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException e) {
+            RaspLoggerHelper.error("监听RASPSimple黑名单规则文件失败，规则不会热更新: " + file, e);
+            return;
+        }
+        Thread t = new Thread(() -> watch(watcher, file), "RASPSimple-RuleWatcher");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    private static void watch(WatchService watcher, Path file) {
+        Path name = file.getFileName();
+        while (true) {
+            WatchKey key;
+            try {
+                key = watcher.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            boolean changed = false;
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (name.equals(event.context())) {
+                    changed = true;
+                }
+            }
+            if (!key.reset()) {
+                RaspLoggerHelper.warn("Blacklist rules directory is no longer watched: " + file.getParent());
+                return;
+            }
+            if (!changed) {
+                continue;
+            }
+            try {
+                // 编辑器保存往往产生多次事件，等写入完成后合并为一次加载
+                Thread.sleep(DEBOUNCE_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            WatchKey pending;
+            while ((pending = watcher.poll()) != null) {
+                pending.pollEvents();
+                pending.reset();
+            }
+            reload(file);
+        }
+    }
+}
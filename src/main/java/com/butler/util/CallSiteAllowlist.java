@@ -0,0 +1,270 @@
+package com.butler.util;
+
+import com.butler.helper.RaspLoggerHelper;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 可信调用点白名单
+ *
+ * 生产环境的大部分进程启动来自少数几个固定调用点（例如业务自身的 ImageConverter.run、JDBC 驱动的辅助方法），
+ * 这些调用点每次都完整地走一遍 checkArgs 没有必要。这里以调用点指纹为键：
+ * - 指纹 = 跳过 RASPSimple 与 JDK 进程启动链后前 N 帧 类名.方法名 的 64 位哈希，可选再混入程序名（不含路径）；
+ * - 白名单为开放寻址的 long[] 哈希表，查询常数时间、不分配内存；命中后跳过正则与 LLM 分析。
+ *
+ * 学习模式：在预热期内记录所有通过检测（未被阻断）的调用点，预热结束后写出策略文件，
+ * 人工审核后通过 rasp.allowlist.file 加载。学习模式只记录、不放行。
+ *
+ * 注意：白名单信任的是调用点而非命令内容，调用点的参数若可被外部控制，应开启 withProgram 或不要加入白名单。
+ *
+ * 策略文件格式：每行一个十六进制指纹，# 之后为注释；文件头的 "# frames=N withProgram=true|false" 覆盖系统属性。
+ *
+ * 配置（JVM 系统属性）：
+ * - rasp.allowlist.file         策略文件路径，未设置时不启用白名单
+ * - rasp.allowlist.frames       参与指纹计算的栈帧数，默认 4
+ * - rasp.allowlist.withProgram  指纹是否混入程序名，默认 true
+ * - rasp.allowlist.learnSeconds 学习模式预热时长（秒），默认 0（关闭）
+ * - rasp.allowlist.learnOutput  学习结果输出路径，默认 ${user.dir}/RASPSimple_allowlist_&lt;时间戳&gt;.policy
+ */
+public class CallSiteAllowlist {
+
+    private static final String HEADER_PREFIX = "# frames=";
+
+    private static final CallSiteAllowlist INSTANCE = fromSystemProperties();
+
+    private final int frames;
+    private final boolean withProgram;
+    /** 开放寻址表，0 表示空槽位（指纹 0 映射为 1） */
+    private final long[] table;
+    private final int size;
+
+    /** 学习截止时间（毫秒），0 表示未开启学习模式 */
+    private volatile long learnUntilMillis;
+    private final File learnOutput;
+    private final Map<Long, String> learned = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    CallSiteAllowlist(int frames, boolean withProgram, List<Long> fingerprints, long learnSeconds, File learnOutput) {
+        this.frames = frames;
+        this.withProgram = withProgram;
+        int capacity = fingerprints.isEmpty() ? 0 : Integer.highestOneBit(fingerprints.size() * 2 - 1) << 1;
+        this.table = new long[capacity];
+        int n = 0;
+        for (long fp : fingerprints) {
+            if (insert(fp == 0 ? 1 : fp)) {
+                n++;
+            }
+        }
+        this.size = n;
+        this.learnOutput = learnOutput;
+        if (learnSeconds > 0) {
+            this.learnUntilMillis = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(learnSeconds);
+            startLearnTimer(learnSeconds);
+        }
+    }
+
+    public static CallSiteAllowlist getInstance() {
+        return INSTANCE;
+    }
+
+    private static CallSiteAllowlist fromSystemProperties() {
+        int frames = Math.max(1, Integer.getInteger("rasp.allowlist.frames", 4));
+        boolean withProgram = Boolean.parseBoolean(System.getProperty("rasp.allowlist.withProgram", "true"));
+        long learnSeconds = Long.getLong("rasp.allowlist.learnSeconds", 0L);
+        String output = System.getProperty("rasp.allowlist.learnOutput");
+        if (output == null || output.isEmpty()) {
+            String timestamp = new java.text.SimpleDateFormat("yyyyMMdd_HHmmss").format(new Date());
+            output = System.getProperty("user.dir") + File.separator + "RASPSimple_allowlist_" + timestamp + ".policy";
+        }
+
+        List<Long> fingerprints = new ArrayList<>();
+        String path = System.getProperty("rasp.allowlist.file");
+        if (path != null && !path.isEmpty()) {
+            try (BufferedReader reader = Files.newBufferedReader(new File(path).toPath(), StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    line = line.trim();
+                    if (line.startsWith(HEADER_PREFIX)) {
+                        // 以策略文件生成时的指纹参数为准，否则指纹不可能命中
+                        for (String kv : line.substring(1).trim().split("\\s+")) {
+                            if (kv.startsWith("frames=")) {
+                                frames = Integer.parseInt(kv.substring("frames=".length()));
+                            } else if (kv.startsWith("withProgram=")) {
+                                withProgram = Boolean.parseBoolean(kv.substring("withProgram=".length()));
+                            }
+                        }
+                        continue;
+                    }
+                    int comment = line.indexOf('#');
+                    if (comment >= 0) {
+                        line = line.substring(0, comment).trim();
+                    }
+                    if (!line.isEmpty()) {
+                        fingerprints.add(Long.parseUnsignedLong(line, 16));
+                    }
+                }
+                RaspLoggerHelper.info("Call-site allowlist loaded from: " + path + " entries=" + fingerprints.size()
+                        + " frames=" + frames + " withProgram=" + withProgram);
+            } catch (IOException | RuntimeException e) {
+                RaspLoggerHelper.error("加载RASPSimple调用点白名单失败，将不使用白名单: " + path, e);
+                fingerprints.clear();
+            }
+        }
+        return new CallSiteAllowlist(frames, withProgram, fingerprints, learnSeconds, new File(output));
+    }
+
+    /**
+     * 是否需要计算调用点指纹（白名单非空或处于学习模式）
+     */
+    public boolean isActive() {
+        return size != 0 || learnUntilMillis != 0;
+    }
+
+    /**
+     * 当前调用点指纹
+     * @param program 命令的程序部分（可带路径），withProgram 关闭时忽略
+     */
+    public long fingerprint(String program) {
+        long h = StackCaptureUtil.callSiteFingerprint(frames);
+        if (withProgram && program != null) {
+            int start = basenameStart(program);
+            for (int i = start, n = program.length(); i < n; i++) {
+                h = (h ^ program.charAt(i)) * StackCaptureUtil.FNV_PRIME;
+            }
+        }
+        return h == 0 ? 1 : h;
+    }
+
+    /**
+     * 指纹是否在白名单中
+     */
+    public boolean contains(long fp) {
+        if (size == 0) {
+            return false;
+        }
+        int mask = table.length - 1;
+        for (int i = (int) mix(fp) & mask; ; i = (i + 1) & mask) {
+            long v = table[i];
+            if (v == fp) {
+                hits.increment();
+                return true;
+            }
+            if (v == 0) {
+                misses.increment();
+                return false;
+            }
+        }
+    }
+
+    /**
+     * 学习模式下记录通过检测的调用点，预热期结束后不再记录
+     */
+    public void learn(long fp, String program) {
+        long until = learnUntilMillis;
+        if (until == 0 || learned.containsKey(fp)) {
+            return;
+        }
+        if (System.currentTimeMillis() > until) {
+            return;
+        }
+        String description = StackCaptureUtil.describeCallSite(frames);
+        if (withProgram && program != null) {
+            description += " | " + program.substring(basenameStart(program));
+        }
+        learned.putIfAbsent(fp, description);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public int getLearnedCount() {
+        return learned.size();
+    }
+
+    /** 命令字符串的程序部分：第一个空白之前的内容 */
+    static String programOf(String command) {
+        String s = command.trim();
+        for (int i = 0; i < s.length(); i++) {
+            if (Character.isWhitespace(s.charAt(i))) {
+                return s.substring(0, i);
+            }
+        }
+        return s;
+    }
+
+    private static int basenameStart(String program) {
+        return Math.max(program.lastIndexOf('/'), program.lastIndexOf('\\')) + 1;
+    }
+
+    private boolean insert(long fp) {
+        int mask = table.length - 1;
+        for (int i = (int) mix(fp) & mask; ; i = (i + 1) & mask) {
+            if (table[i] == fp) {
+                return false;
+            }
+            if (table[i] == 0) {
+                table[i] = fp;
+                return true;
+            }
+        }
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private void startLearnTimer(long learnSeconds) {
+        Thread timer = new Thread(() -> {
+            try {
+                TimeUnit.SECONDS.sleep(learnSeconds);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            learnUntilMillis = 0;
+            writePolicy();
+        }, "RASPSimple-AllowlistLearn");
+        timer.setDaemon(true);
+        timer.start();
+    }
+
+    /**
+     * 写出学习到的策略文件
+     */
+    private void writePolicy() {
+        try (Writer writer = Files.newBufferedWriter(learnOutput.toPath(), StandardCharsets.UTF_8)) {
+            writer.write("# RASPSimple call-site allowlist, learned at " + new Date() + "\n");
+            writer.write(HEADER_PREFIX + frames + " withProgram=" + withProgram + "\n");
+            for (Map.Entry<Long, String> e : learned.entrySet()) {
+                writer.write(String.format("%016x  # %s%n", e.getKey(), e.getValue()));
+            }
+            RaspLoggerHelper.info("Call-site allowlist learned " + learned.size() + " entries, written to: " + learnOutput);
+        } catch (IOException e) {
+            RaspLoggerHelper.error("写出RASPSimple调用点白名单失败: " + learnOutput, e);
+        }
+    }
+}
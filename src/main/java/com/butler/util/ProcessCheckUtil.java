@@ -1,18 +1,15 @@
 package com.butler.util;
 
 import com.butler.helper.RaspLoggerHelper;
+import com.butler.metrics.RaspMetrics;
 import com.butler.service.LLMAnalysis;
-import java.io.File;
-import java.io.IOException;
+import com.butler.service.LLMAnalysisQueue;
+import com.butler.service.RiskModel;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
-import java.util.Date;
-import java.util.List;
-import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 import static com.butler.AgentMain.QWEN_API_KEY;
-import static com.butler.service.LLMAnalysis.LLM_LOG_FILE;
 
 /**
  * 检查是否存在对 /etc/passwd 的访问行为
@@ -20,25 +17,24 @@ import static com.butler.service.LLMAnalysis.LLM_LOG_FILE;
  */
 public class ProcessCheckUtil {
 
-    /**
-     * 黑名单正则列表 —— 针对常见命令注入/反弹手法做简单匹配。
-     * 可替换为从配置文件动态加载以支持热更新。
+    /*
+     * 黑名单规则由 BlacklistRules 管理：默认为内置规则，配置 rasp.rules.file 后从文件加载并随文件变化热更新。
+     * 每次检测只读取一次当前规则集，整个检测过程使用同一份规则。
      */
-    private static final List<Pattern> BLACKLIST = Arrays.asList(
-            // Linux reads
-            Pattern.compile("(?i)\\bcat\\b\\s+/etc/passwd"),                        // cat /etc/passwd
-            Pattern.compile("(?i)\\bcat\\b\\s+[^\\r\\n]*\\b/dev/tcp\\b"),           // bash reverse via /dev/tcp
-            // Windows reads
-            Pattern.compile("(?i)\\btype\\b\\s+(?:[A-Za-z]:\\\\|\\\\\\\\)[^\\r\\n\\s]+"), // type C:\path\file or type \\server\share\file
-            Pattern.compile("(?i)\\btype\\b\\s+[A-Za-z]:\\\\Windows\\\\win\\.ini\\b"),     // specific example: type C:\Windows\win.ini
-            // Common reverse-shell / remote-exec patterns (Linux & Windows)
-            Pattern.compile("(?i)\\b(?:nc|ncat|netcat)\\b[^\\r\\n]{0,80}-e\\b"),     // nc -e ...
-            Pattern.compile("(?i)\\b(?:bash|sh)\\b[^\\r\\n]{0,120}/dev/tcp\\b"),     // bash ... /dev/tcp (reverse shell)
-            Pattern.compile("(?i)\\bpython(?:3)?\\b[^\\r\\n]{0,200}\\b(?:socket|subprocess|Popen)\\b"), // python -c "import socket/ subprocess..."
-            Pattern.compile("(?i)\\bpowershell(?:\\.exe)?[^\\r\\n]{0,200}\\b(?:IEX|Invoke-Expression|Invoke-WebRequest|DownloadString)\\b"), // powershell IEX / download & exec
-            Pattern.compile("(?i)\\bperl\\b[^\\r\\n]{0,200}-e\\b"),                  // perl -e ...
-            Pattern.compile("(?i)\\b(?:curl|wget)\\b[^\\r\\n]{0,120}\\|\\s*(?:sh|bash)\\b") // curl ... | sh
-    );
+
+    /* 字节级放行路径使用的完整日志行，避免每次拼接前缀 */
+    private static final String LOG_CHECK_START = "[*] [RASPSimple] ======================= Check Command Start =======================";
+    private static final String LOG_FIND_COMMAND = "[*] [RASPSimple] Find Command execute: ";
+    private static final String LOG_CHECK_END = "[*] [RASPSimple] ======================= Check Command Ending =======================";
+
+    /** 命令检测结论缓存，重复命令直接复用放行/阻断结论与 LLM 评分 */
+    private static final VerdictCache VERDICT_CACHE = VerdictCache.fromSystemProperties();
+
+    /** 可信调用点白名单，命中后跳过正则与 LLM 分析 */
+    private static final CallSiteAllowlist ALLOWLIST = CallSiteAllowlist.getInstance();
+
+    /** 运行指标（JMX） */
+    private static final RaspMetrics METRICS = RaspMetrics.getInstance();
 
     /**
      * checkArgs
@@ -51,51 +47,219 @@ public class ProcessCheckUtil {
      * @param arg 可能是命令字符串、命令数组、byte[]（如底层 C-style blocks），或 Object[]（反射传参）
      */
     public static void checkArgs(Object arg) {
+        long start = System.nanoTime();
+        try {
+            doCheckArgs(arg);
+        } finally {
+            METRICS.recordCheck(System.nanoTime() - start);
+        }
+    }
+
+    private static void doCheckArgs(Object arg) {
 
         RaspLoggerHelper.info("======================= Check Command Start =======================");
         String s = stringifyArg(arg);
         if (s == null) return; // 无可检测内容，直接放行
 
         RaspLoggerHelper.info("Find Command execute: " + s);
-        for (Pattern p : BLACKLIST) {
-            if (p.matcher(s).find()) {
+
+        // 可信调用点快速路径：常数时间查表，命中后不再执行正则与 LLM 分析
+        long callSite = 0;
+        String program = null;
+        if (ALLOWLIST.isActive()) {
+            program = arg instanceof String[] && ((String[]) arg).length > 0
+                    ? ((String[]) arg)[0] : CallSiteAllowlist.programOf(s);
+            callSite = ALLOWLIST.fingerprint(program);
+            if (ALLOWLIST.contains(callSite)) {
+                if (arg instanceof String[]) {
+                    SpawnContext.markCleared((String[]) arg);
+                }
+                RaspLoggerHelper.info("Trusted call-site " + Long.toHexString(callSite) + ", skip analysis");
+                RaspLoggerHelper.info("======================= Check Command Ending =======================");
+                return;
+            }
+        }
+
+        // 先读缓存代数再读规则集：规则热更新清空缓存后，本次检测的结论不会写回缓存
+        final int epoch = VERDICT_CACHE.epoch();
+        BlacklistMatcher blacklist = BlacklistRules.current().getMatcher();
+        VerdictCache.Verdict cached = VERDICT_CACHE.get(s);
+        if (cached != null) {
+            if (cached.isBlocked()) {
+                // 缓存命中阻断结论，直接阻断
+                logAndBlock(s, cached.getReason());
+                monitorPass(arg);
+                return;
+            }
+        } else {
+            long regexStart = System.nanoTime();
+            BlacklistMatcher.Rule hit = blacklist.match(s);
+            METRICS.recordRegex(System.nanoTime() - regexStart);
+            if (hit != null) {
                 // 命中黑名单，记录并阻断
-                logAndBlock(s, p.pattern());
+                VERDICT_CACHE.put(s, true, hit.getPattern().pattern(), VerdictCache.NO_SCORE, epoch);
+                logAndBlock(s, hit.getPattern().pattern());
+                monitorPass(arg);
+                return;
             }
         }
 
         //LLM大模型分析
 //        System.out.println(QWEN_API_KEY);
-        if(QWEN_API_KEY!= null && !QWEN_API_KEY.isEmpty()){
-            // 获取应用目录
-            if(LLM_LOG_FILE == null || LLM_LOG_FILE.isEmpty()){
-                String appDir = System.getProperty("user.dir");
-                if (appDir == null || appDir.isEmpty()) {
-                    try {
-                        appDir = new File(".").getCanonicalPath();
-                    } catch (IOException e) {
-                        throw new RuntimeException(e);
-                    }
-                }
-                // 在文件名中加上时间戳
-                String timestamp = new java.text.SimpleDateFormat("yyyyMMdd_HHmmss").format(new Date());
-                // 在文件名中加上时间戳
-                LLM_LOG_FILE = appDir + File.separator + "RASPSimple_LLMAnalyze_" + timestamp + ".log";
-                RaspLoggerHelper.info("LLM Log initialized at: " + LLM_LOG_FILE);
-            }
+        boolean llmEnabled = QWEN_API_KEY != null && !QWEN_API_KEY.isEmpty();
+        RiskModel riskModel = RiskModel.getDefault();
+        boolean analyzed = cached != null
+                && (cached.getLlmScore() != VerdictCache.NO_SCORE || (!llmEnabled && riskModel == null));
 
+        // 本地评分：分数明确时直接采用，只有边界分数才交给 LLM
+        String callstack = null;
+        int localScore = VerdictCache.NO_SCORE;
+        if (!analyzed && riskModel != null) {
+            callstack = StackCaptureUtil.capture();
+            localScore = scoreLocally(riskModel, s, callstack, llmEnabled);
+        }
+
+        if (analyzed) {
+            // 已有完整结论，跳过重复分析
+            RaspLoggerHelper.info("Verdict cache hit, risk score: " + cached.getLlmScore());
+        } else if (llmEnabled && (riskModel == null || RiskModel.isBorderline(localScore))) {
             RaspLoggerHelper.info("========= LLM Analyze Start:");
-            String stack = Arrays.stream(Thread.currentThread().getStackTrace())
-                    .map(StackTraceElement::toString)
-                    .limit(20) // 限制栈深避免日志过长
-                    .collect(Collectors.joining("\n"));
-            LLMAnalysis.analyze(s,stack);
-            RaspLoggerHelper.info("========= LLM Analyze Ending:");
+            // 异步分析：当前线程只负责入队，评分由工作线程回写缓存
+            // 先写入放行结论，避免覆盖工作线程回写的评分
+            if (cached == null) {
+                VERDICT_CACHE.put(s, false, null, VerdictCache.NO_SCORE, epoch);
+            }
+            // 调用栈只在任务真正入队时采集（同一命令已在分析中则不采集），本地评分已采集时复用
+            final String command = s;
+            final String stack = callstack;
+            boolean queued = LLMAnalysisQueue.getInstance().submit(command,
+                    stack != null ? () -> stack : StackCaptureUtil::capture,
+                    score -> VERDICT_CACHE.put(command, false, null, score, epoch));
+            RaspLoggerHelper.info("========= LLM Analyze Queued: " + queued);
+        } else {
+            VERDICT_CACHE.put(s, false, null, localScore, epoch);
         }
 
+        if (callSite != 0) {
+            // 学习模式：记录通过检测的调用点
+            ALLOWLIST.learn(callSite, program);
+        }
+        if (arg instanceof String[]) {
+            // 放行的命令数组记入本次启动的凭证，内层 Hook 参数不变时不再重复检测
+            SpawnContext.markCleared((String[]) arg);
+        }
         RaspLoggerHelper.info("======================= Check Command Ending =======================");
     }
 
+    /** 本地风险模型评分并记录指标 */
+    private static int scoreLocally(RiskModel model, String command, String callstack, boolean llmEnabled) {
+        long start = System.nanoTime();
+        int score = model.score(command, callstack);
+        boolean escalate = llmEnabled && RiskModel.isBorderline(score);
+        METRICS.recordLocalScore(System.nanoTime() - start, escalate);
+        RaspLoggerHelper.info("Local risk score: " + score + (escalate ? ", escalate to LLM" : ""));
+        if (score > RiskModel.HIGH) {
+            // 高分结论不再交给 LLM，与 LLM 高分结论一样告警并写入分析日志
+            METRICS.recordLocalHighRisk();
+            RaspLoggerHelper.warn("High local risk score " + score + " (> " + RiskModel.HIGH + ") for command: " + command);
+            if (llmEnabled) {
+                LLMAnalysis.recordLocalVerdict(command, callstack, score);
+            }
+        }
+        return score;
+    }
+
+    /**
+     * checkInnerArgs
+     * 内层 Hook 入口（ProcessImpl.&lt;init&gt; / UNIXProcess.&lt;init&gt;）：参数与外层 ProcessImpl.start 已放行的一致时直接返回，
+     * 只有参数在两层之间发生变化（或绕过了外层直接调用）时才做完整检测。
+     *
+     * @param cmdOrProg Windows 下为 String[] cmd；Linux 下为 byte[] prog
+     * @param argBlock  Linux 下为 byte[] argBlock；Windows 下为 null
+     */
+    public static void checkInnerArgs(Object cmdOrProg, Object argBlock) {
+        if (cmdOrProg instanceof String[] && argBlock == null) {
+            if (!SpawnContext.isCleared((String[]) cmdOrProg)) {
+                checkArgs(cmdOrProg);
+            }
+            return;
+        }
+        if (cmdOrProg instanceof byte[] && argBlock instanceof byte[]) {
+            byte[] prog = (byte[]) cmdOrProg;
+            byte[] block = (byte[]) argBlock;
+            if (!SpawnContext.isCleared(prog, block)) {
+                checkArgBlock(prog, block);
+            }
+            SpawnContext.markNativeCleared(block);
+            return;
+        }
+        checkArgs(cmdOrProg);
+        if (argBlock != null) {
+            checkArgs(argBlock);
+        }
+    }
+
+    /**
+     * 供 native forkAndExec Hook 通过 JNI 调用：argBlock 是否已被 Java 内层检测放行（一次性）
+     */
+    public static boolean isNativeCleared(byte[] argBlock) {
+        return SpawnContext.consumeNativeCleared(argBlock);
+    }
+
+    /**
+     * checkArgBlock
+     * UNIXProcess 参数块的字节级检测：直接在以 '\0' 分隔的 prog / argBlock 上运行黑名单自动机。
+     * 未命中任何锚点（常见放行路径）时不解码为 String、不做字符串拼接，日志内容也由写线程延迟解码；
+     * 命中锚点或开启了 LLM 分析时才解码，交给 checkArgs 走完整流程。
+     */
+    private static void checkArgBlock(byte[] prog, byte[] argBlock) {
+        if (ALLOWLIST.isActive()) {
+            // 白名单需要程序名，交给 checkArgs 统一处理
+            checkArgs(joinArgBlock(prog, argBlock));
+            return;
+        }
+        boolean llmEnabled = QWEN_API_KEY != null && !QWEN_API_KEY.isEmpty();
+        if (llmEnabled) {
+            checkArgs(joinArgBlock(prog, argBlock));
+            return;
+        }
+        long start = System.nanoTime();
+        // 锚点预筛不计入正则耗时，命中后由 checkArgs 记录本次检测的正则样本
+        if (BlacklistRules.current().getMatcher().mayMatch(prog, argBlock)) {
+            checkArgs(joinArgBlock(prog, argBlock));
+            return;
+        }
+        RaspLoggerHelper.infoArgBlock(LOG_CHECK_START, null, null);
+        RaspLoggerHelper.infoArgBlock(LOG_FIND_COMMAND, prog, argBlock);
+        RaspLoggerHelper.infoArgBlock(LOG_CHECK_END, null, null);
+        METRICS.recordCheck(System.nanoTime() - start);
+    }
+
+    /** prog + argBlock 还原为以空格分隔的命令行 */
+    private static String joinArgBlock(byte[] prog, byte[] argBlock) {
+        // prog 以 '\0' 结尾时该字节本身即为分隔符
+        int sep = prog.length > 0 && prog[prog.length - 1] == 0 ? 0 : 1;
+        byte[] joined = new byte[prog.length + sep + argBlock.length];
+        System.arraycopy(prog, 0, joined, 0, prog.length);
+        if (sep == 1) {
+            joined[prog.length] = ' ';
+        }
+        System.arraycopy(argBlock, 0, joined, prog.length + sep, argBlock.length);
+        for (int i = 0; i < joined.length; i++) {
+            if (joined[i] == 0) {
+                joined[i] = ' ';
+            }
+        }
+        return new String(joined, StandardCharsets.UTF_8).trim();
+    }
+
+    /**
+     * 检测结论缓存，用于读取命中率等统计
+     */
+    public static VerdictCache getVerdictCache() {
+        return VERDICT_CACHE;
+    }
+
     /**
      * stringifyArg
      *
@@ -107,8 +271,9 @@ public class ProcessCheckUtil {
      * - 其它       -> 调用 String.valueOf 作为兜底（尽量提供可读字符串，便于匹配与审计）
      *
      * 如果无法或不合理地串化，返回 null（则不做检测）。
+     * 包内可见，供 benchmarks 模块的 JMH 基准测试直接调用。
      */
-    private static String stringifyArg(Object arg) {
+    static String stringifyArg(Object arg) {
         if (arg == null) return null;
 
         if (arg instanceof String) {
@@ -147,25 +312,40 @@ public class ProcessCheckUtil {
         }
     }
 
+    /**
+     * MONITOR 模式下命中后放行：与正常放行一样记入启动凭证，内层 Hook 不再重复告警
+     */
+    private static void monitorPass(Object arg) {
+        if (arg instanceof String[]) {
+            SpawnContext.markCleared((String[]) arg);
+        }
+        RaspLoggerHelper.info("======================= Check Command Ending =======================");
+    }
+
     /**
      * logAndBlock
      *
-     * 记录触发信息并抛出 SecurityException 阻断执行。
+     * 记录触发信息并抛出 SecurityException 阻断执行；MONITOR 模式下只记录、正常返回。
      *
-     * - 记录信息包含被检测到的命令字符串、匹配原因（正则）以及简要调用栈（最多 20 条）。
+     * - 记录信息包含被检测到的命令字符串、匹配原因（正则）以及简要调用栈（最多 rasp.stack.maxFrames 条，默认 20）。
      * - 抛出 SecurityException，用于在调用链上回退并阻断命令执行。
      *
      * 注意：如果你希望在生产环境降低误杀风险，可把这里改为先告警同时返回一个受控异常或调用上报链路（本工具默认阻断）。
      */
     private static void logAndBlock(String cmd, String reason) {
-        String stack = Arrays.stream(Thread.currentThread().getStackTrace())
-                .map(StackTraceElement::toString)
-                .limit(20) // 限制栈深避免日志过长
-                .collect(Collectors.joining("\n"));
+        METRICS.recordBlock(reason);
+
+        // 阻断与 LLM 分析互斥，每次检测至多采集一次调用栈
+        String stack = StackCaptureUtil.capture();
 
         // 输出到你的 RASP 日志系统
         RaspLoggerHelper.warn("Blocked suspicious command: " + cmd + " reason:" + reason + "\nStack:\n" + stack);
 
+        if (!RaspMode.isEnforcing()) {
+            RaspLoggerHelper.warn("Monitor mode, command allowed: " + cmd);
+            return;
+        }
+
         // 直接阻断当前执行（调用者应捕获或允许传播）
         throw new SecurityException("[RASPSimple blocked dangerous command]");
     }
@@ -0,0 +1,73 @@
+package com.butler.util;
+
+import com.butler.helper.RaspLoggerHelper;
+import java.util.Locale;
+
+/**
+ * 运行模式开关
+ *
+ * 注入到目标方法入口的 advice 先读取 {@link #MODE}，为 OFF 时直接跳过检测调用，
+ * 此时的全部开销只有一次静态字段读取和一次分支；切换模式只改字段值，不需要 retransform。
+ * - OFF      不检测
+ * - MONITOR  检测并记录日志，命中黑名单也不阻断
+ * - ENFORCE  检测并阻断（默认）
+ *
+ * 切换方式：启动参数 -Drasp.mode=monitor、再次 attach 时的 agent 参数 mode=monitor、JMX 属性 Mode。
+ * Native Agent 的 forkAndExec / ProcessImpl.create Hook 通过 JNI 读取同一字段，按相同规则跳过扫描、只记录或阻断。
+ */
+public class RaspMode {
+
+    public static final int OFF = 0;
+    public static final int MONITOR = 1;
+    public static final int ENFORCE = 2;
+
+    private static final String[] NAMES = {"OFF", "MONITOR", "ENFORCE"};
+
+    /** 由注入的字节码直接读取（GETSTATIC com/butler/util/RaspMode.MODE I），名称与类型不能修改 */
+    public static volatile int MODE = parseOrDefault(System.getProperty("rasp.mode"));
+
+    /** 当前模式名 */
+    public static String getName() {
+        return NAMES[MODE];
+    }
+
+    public static boolean isEnforcing() {
+        return MODE == ENFORCE;
+    }
+
+    /**
+     * 切换模式
+     * @param name OFF / MONITOR / ENFORCE，大小写不敏感
+     * @throws IllegalArgumentException 模式名无效
+     */
+    public static void set(String name) {
+        int next = parse(name);
+        int previous = MODE;
+        MODE = next;
+        if (previous != next) {
+            RaspLoggerHelper.info("RASP mode changed: " + NAMES[previous] + " -> " + NAMES[next]);
+        }
+    }
+
+    static int parse(String name) {
+        String upper = name == null ? "" : name.trim().toUpperCase(Locale.ROOT);
+        for (int i = 0; i < NAMES.length; i++) {
+            if (NAMES[i].equals(upper)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Unknown RASP mode: " + name + ", expected OFF / MONITOR / ENFORCE");
+    }
+
+    private static int parseOrDefault(String name) {
+        if (name == null || name.isEmpty()) {
+            return ENFORCE;
+        }
+        try {
+            return parse(name);
+        } catch (IllegalArgumentException e) {
+            RaspLoggerHelper.warn(e.getMessage() + ", using ENFORCE");
+            return ENFORCE;
+        }
+    }
+}
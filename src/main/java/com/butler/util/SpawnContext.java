@@ -0,0 +1,91 @@
+package com.butler.util;
+
+import java.util.Arrays;
+
+/**
+ * 单次进程启动的检测凭证
+ *
+ * 一次 Runtime.exec 会依次经过 ProcessImpl.start → ProcessImpl/UNIXProcess.&lt;init&gt; → native forkAndExec，
+ * 每一层都有 Hook。最外层检测放行后在当前线程记录已放行的参数，内层 Hook 只要确认参数未变化即可跳过完整检测：
+ * - Java 内层：逐字节比对 prog/argBlock 与已放行的 String[]，无需解码；
+ * - Native 层：UNIXProcess.&lt;init&gt; 放行后记录 argBlock 引用，forkAndExec 收到同一个数组时直接放行（一次性）。
+ *
+ * 凭证只能由放行过的参数产生，残留凭证也只能让完全相同的参数跳过检测，不会放行新的命令。
+ */
+public class SpawnContext {
+
+    private static final class Token {
+        /** 外层已放行的命令数组（拷贝） */
+        String[] cmdarray;
+        /** Java 内层已放行、等待 native 层确认的 argBlock */
+        byte[] nativeArgBlock;
+    }
+
+    private static final ThreadLocal<Token> TOKEN = ThreadLocal.withInitial(Token::new);
+
+    /** 记录外层已放行的命令数组 */
+    static void markCleared(String[] cmdarray) {
+        TOKEN.get().cmdarray = cmdarray.clone();
+    }
+
+    /** 命令数组与外层已放行的完全一致 */
+    static boolean isCleared(String[] cmdarray) {
+        String[] cleared = TOKEN.get().cmdarray;
+        return cleared != null && Arrays.equals(cleared, cmdarray);
+    }
+
+    /**
+     * prog/argBlock 与外层已放行的命令数组等价。
+     * prog 为 cmdarray[0] + '\0'，argBlock 为 cmdarray[1..n] 各自加 '\0' 拼接；
+     * 出现非 ASCII 字符时无法在不解码的情况下比对，返回 false 走完整检测。
+     */
+    static boolean isCleared(byte[] prog, byte[] argBlock) {
+        String[] cleared = TOKEN.get().cmdarray;
+        if (cleared == null || cleared.length == 0 || prog == null || argBlock == null) {
+            return false;
+        }
+        int end = asciiMatch(cleared[0], prog, 0);
+        if (end < 0 || (end != prog.length && !(end == prog.length - 1 && prog[end] == 0))) {
+            return false;
+        }
+        int pos = 0;
+        for (int i = 1; i < cleared.length; i++) {
+            pos = asciiMatch(cleared[i], argBlock, pos);
+            if (pos < 0 || pos >= argBlock.length || argBlock[pos] != 0) {
+                return false;
+            }
+            pos++;
+        }
+        return pos == argBlock.length;
+    }
+
+    /** 记录 Java 内层已放行的 argBlock，供 native 层确认 */
+    static void markNativeCleared(byte[] argBlock) {
+        TOKEN.get().nativeArgBlock = argBlock;
+    }
+
+    /** native 层收到的 argBlock 正是 Java 内层放行的那一个（一次性消费） */
+    static boolean consumeNativeCleared(byte[] argBlock) {
+        Token token = TOKEN.get();
+        boolean cleared = argBlock != null && token.nativeArgBlock == argBlock;
+        token.nativeArgBlock = null;
+        return cleared;
+    }
+
+    /**
+     * 从 offset 开始逐字节比对 ASCII 字符串
+     * @return 比对成功后的下一个位置，失败返回 -1
+     */
+    private static int asciiMatch(String s, byte[] bytes, int offset) {
+        if (s == null || offset + s.length() > bytes.length) {
+            return -1;
+        }
+        for (int i = 0, n = s.length(); i < n; i++) {
+            char c = s.charAt(i);
+            if (c > 0x7F || bytes[offset + i] != (byte) c) {
+                return -1;
+            }
+        }
+        return offset + s.length();
+    }
+}
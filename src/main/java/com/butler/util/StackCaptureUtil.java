@@ -0,0 +1,140 @@
+package com.butler.util;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * 调用栈采集工具
+ *
+ * 只在规则命中或需要 LLM 分析时才采集，且只渲染有限帧数；RASPSimple 自身（com.butler.*）
+ * 和 Thread.getStackTrace 所在的栈顶帧会被跳过，第一帧即为被 Hook 的 JDK 方法。
+ *
+ * JDK 9+ 运行时使用 StackWalkerCapture（src/main/java9，以 release 9 编译），
+ * Java 8 运行时退化为 Thread.getStackTrace（会先生成完整栈）。
+ *
+ * 配置：rasp.stack.maxFrames 最大帧数，默认 20
+ */
+public class StackCaptureUtil {
+
+    public static final int MAX_FRAMES = Integer.getInteger("rasp.stack.maxFrames", 20);
+
+    /** JDK 9+ 下指向 StackWalkerCapture.capture(int)，否则为 null */
+    private static final MethodHandle STACK_WALKER = findStackWalker("capture", String.class);
+    /** JDK 9+ 下指向 StackWalkerCapture.fingerprint(int)，否则为 null */
+    private static final MethodHandle STACK_WALKER_FINGERPRINT = findStackWalker("fingerprint", long.class);
+
+    static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    static final long FNV_PRIME = 0x100000001b3L;
+
+    /**
+     * 采集当前线程调用栈
+     * @return 每行一帧的调用栈字符串
+     */
+    public static String capture() {
+        if (STACK_WALKER != null) {
+            try {
+                return (String) STACK_WALKER.invokeExact(MAX_FRAMES);
+            } catch (Throwable ignored) {
+                // 退化为 Thread.getStackTrace
+            }
+        }
+        StackTraceElement[] frames = Thread.currentThread().getStackTrace();
+        StringBuilder sb = new StringBuilder(MAX_FRAMES * 64);
+        int i = 0;
+        // 跳过栈顶的采集/检测帧
+        while (i < frames.length && isAgentFrame(frames[i].getClassName())) {
+            i++;
+        }
+        for (int n = 0; i < frames.length && n < MAX_FRAMES; i++, n++) {
+            if (n > 0) {
+                sb.append('\n');
+            }
+            sb.append(frames[i]);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 调用点指纹：跳过 RASPSimple 自身和 JDK 进程启动链（ProcessImpl / ProcessBuilder / Runtime 等）的栈帧后，
+     * 对前 frames 帧的 类名.方法名 做 FNV-1a 64 位哈希。不含行号，应用小幅改动后指纹保持稳定。
+     */
+    public static long callSiteFingerprint(int frames) {
+        if (STACK_WALKER_FINGERPRINT != null) {
+            try {
+                return (long) STACK_WALKER_FINGERPRINT.invokeExact(frames);
+            } catch (Throwable ignored) {
+                // 退化为 Thread.getStackTrace
+            }
+        }
+        StackTraceElement[] st = Thread.currentThread().getStackTrace();
+        int i = 0;
+        while (i < st.length && isSpawnFrame(st[i].getClassName())) {
+            i++;
+        }
+        long h = FNV_OFFSET;
+        for (int n = 0; i < st.length && n < frames; i++, n++) {
+            h = hashFrame(h, st[i].getClassName(), st[i].getMethodName());
+        }
+        return h;
+    }
+
+    /**
+     * 调用点描述（类名.方法名，由近及远以 " <- " 连接），用于学习模式输出的策略文件
+     */
+    public static String describeCallSite(int frames) {
+        StackTraceElement[] st = Thread.currentThread().getStackTrace();
+        int i = 0;
+        while (i < st.length && isSpawnFrame(st[i].getClassName())) {
+            i++;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (int n = 0; i < st.length && n < frames; i++, n++) {
+            if (n > 0) {
+                sb.append(" <- ");
+            }
+            sb.append(st[i].getClassName()).append('.').append(st[i].getMethodName());
+        }
+        return sb.toString();
+    }
+
+    static long hashFrame(long h, String className, String methodName) {
+        for (int i = 0, n = className.length(); i < n; i++) {
+            h = (h ^ className.charAt(i)) * FNV_PRIME;
+        }
+        h = (h ^ '.') * FNV_PRIME;
+        for (int i = 0, n = methodName.length(); i < n; i++) {
+            h = (h ^ methodName.charAt(i)) * FNV_PRIME;
+        }
+        return (h ^ ';') * FNV_PRIME;
+    }
+
+    static boolean isAgentFrame(String className) {
+        return className.startsWith("com.butler.") || "java.lang.Thread".equals(className);
+    }
+
+    /** 检测自身与 JDK 进程启动链上的栈帧，计算调用点指纹时跳过 */
+    static boolean isSpawnFrame(String className) {
+        return isAgentFrame(className)
+                || className.startsWith("java.lang.ProcessImpl")
+                || className.startsWith("java.lang.ProcessBuilder")
+                || className.startsWith("java.lang.UNIXProcess")
+                || "java.lang.Runtime".equals(className);
+    }
+
+    /**
+     * Agent 通过 appendToBootstrapClassLoaderSearch 加载，启动类加载器不识别 multi-release jar 的 META-INF/versions，
+     * 因此在运行时判断是否可用 StackWalker，而不是依赖 multi-release 替换类。
+     * StackWalkerCapture 以 release 9 编译，主代码按 Java 8 编译，只能通过 MethodHandle 调用。
+     */
+    private static MethodHandle findStackWalker(String name, Class<?> returnType) {
+        try {
+            Class.forName("java.lang.StackWalker");
+            Class<?> capture = Class.forName("com.butler.util.StackWalkerCapture");
+            return MethodHandles.lookup().findStatic(capture, name,
+                    MethodType.methodType(returnType, int.class));
+        } catch (Throwable t) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package com.butler.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 命令检测结果缓存
+ *
+ * 生产环境中绝大多数进程启动都是重复的少数几条命令（df -h、git rev-parse 等），
+ * 对同一条命令缓存放行/阻断结论与 LLM 评分，避免重复执行正则和大模型调用。
+ *
+ * - 以规范化命令的 64 位哈希为键，条目中保留原命令用于碰撞校验；
+ * - 按哈希分段，每段是一个访问顺序的 LinkedHashMap（LRU），各段独立加锁以降低竞争；
+ * - 条目超过 TTL 视为未命中；
+ * - 提供命中/未命中/淘汰计数，用于评估缓存容量；
+ * - clear() 递增代数（epoch），检测开始前读取代数、写入时带上，规则热更新前开始的检测不会把旧规则的结论写回缓存。
+ *
+ * 配置（JVM 系统属性）：
+ * - rasp.cache.maxSize    缓存条目上限，默认 4096，设为 0 关闭缓存
+ * - rasp.cache.ttlSeconds 条目存活时间（秒），默认 600
+ */
+public class VerdictCache {
+
+    /** 未做 LLM 分析时的评分占位 */
+    public static final int NO_SCORE = -1;
+
+    private static final int SEGMENTS = 16;
+
+    /**
+     * 缓存的检测结论
+     */
+    public static class Verdict {
+        private final String command;
+        private final boolean blocked;
+        private final String reason;
+        private final int llmScore;
+        private final long createdNanos;
+
+        Verdict(String command, boolean blocked, String reason, int llmScore) {
+            this.command = command;
+            this.blocked = blocked;
+            this.reason = reason;
+            this.llmScore = llmScore;
+            this.createdNanos = System.nanoTime();
+        }
+
+        public boolean isBlocked() {
+            return blocked;
+        }
+
+        /** 命中的规则（仅阻断时有值） */
+        public String getReason() {
+            return reason;
+        }
+
+        /** 风险评分（LLM 或本地风险模型），未分析时为 {@link #NO_SCORE} */
+        public int getLlmScore() {
+            return llmScore;
+        }
+    }
+
+    private final Segment[] segments;
+    private final long ttlNanos;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /** 缓存代数，每次 clear() 递增 */
+    private final AtomicInteger epoch = new AtomicInteger();
+
+    public VerdictCache(int maxSize, long ttl, TimeUnit unit) {
+        this.ttlNanos = unit.toNanos(ttl);
+        this.segments = new Segment[SEGMENTS];
+        int perSegment = maxSize <= 0 ? 0 : Math.max(1, (maxSize + SEGMENTS - 1) / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(perSegment);
+        }
+    }
+
+    /**
+     * 按系统属性创建缓存
+     */
+    public static VerdictCache fromSystemProperties() {
+        int maxSize = Integer.getInteger("rasp.cache.maxSize", 4096);
+        long ttlSeconds = Long.getLong("rasp.cache.ttlSeconds", 600L);
+        return new VerdictCache(maxSize, ttlSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 查询缓存
+     * @param command 原始命令字符串
+     * @return 未过期的结论，未命中返回 null
+     */
+    public Verdict get(String command) {
+        String normalized = normalize(command);
+        long key = hash(normalized);
+        Segment segment = segmentFor(key);
+        Verdict v;
+        synchronized (segment) {
+            v = segment.get(key);
+            if (v != null && (!v.command.equals(normalized) || System.nanoTime() - v.createdNanos > ttlNanos)) {
+                segment.remove(key);
+                v = null;
+            }
+        }
+        if (v == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return v;
+    }
+
+    /**
+     * 写入检测结论
+     * @param command 原始命令字符串
+     * @param blocked 是否阻断
+     * @param reason  命中的规则
+     * @param llmScore LLM 评分，未分析时传 {@link #NO_SCORE}
+     */
+    public void put(String command, boolean blocked, String reason, int llmScore) {
+        put(command, blocked, reason, llmScore, epoch.get());
+    }
+
+    /**
+     * 写入检测结论，检测期间缓存被清空过（代数变化）时丢弃
+     * @param epoch 检测开始时 {@link #epoch()} 的返回值
+     */
+    public void put(String command, boolean blocked, String reason, int llmScore, int epoch) {
+        String normalized = normalize(command);
+        long key = hash(normalized);
+        Segment segment = segmentFor(key);
+        if (segment.maxSize == 0) return;
+        synchronized (segment) {
+            // 与 clear() 在同一把段锁下检查代数，清空之后不会再写入旧代数的结论
+            if (epoch != this.epoch.get()) {
+                return;
+            }
+            segment.put(key, new Verdict(normalized, blocked, reason, llmScore));
+        }
+    }
+
+    /** 当前缓存代数 */
+    public int epoch() {
+        return epoch.get();
+    }
+
+    /** 清空缓存（规则变更后调用） */
+    public void clear() {
+        epoch.incrementAndGet();
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public String toString() {
+        return "VerdictCache{size=" + size() + ", hits=" + getHitCount()
+                + ", misses=" + getMissCount() + ", evictions=" + getEvictionCount() + "}";
+    }
+
+    /**
+     * 规范化：只去掉首尾空白。
+     * 不合并中间空白，否则 [^\r\n]{0,80} 这类限长规则的结论会随空白数量变化，缓存会把放行结论错误地复用到恶意命令上。
+     */
+    static String normalize(String command) {
+        return command.trim();
+    }
+
+    /**
+     * 命令指纹：规范化后的 FNV-1a 64 位哈希，与缓存键一致
+     */
+    public static long fingerprint(String command) {
+        return hash(normalize(command));
+    }
+
+    /** FNV-1a 64 位哈希 */
+    static long hash(String s) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0, n = s.length(); i < n; i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    private Segment segmentFor(long key) {
+        return segments[(int) ((key ^ (key >>> 32)) & (SEGMENTS - 1))];
+    }
+
+    /**
+     * LRU 分段：访问顺序的 LinkedHashMap，超出容量时淘汰最久未访问的条目
+     */
+    private final class Segment extends LinkedHashMap<Long, Verdict> {
+        private final int maxSize;
+
+        Segment(int maxSize) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Verdict> eldest) {
+            if (size() > maxSize) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.butler.util;
+
+import java.util.Iterator;
+import java.util.stream.Collectors;
+
+/**
+ * 基于 StackWalker 的调用栈采集（JDK 9+）
+ *
+ * 按需遍历栈帧：跳过 RASPSimple 自身的帧后只取 maxFrames 帧，不会像 Thread.getStackTrace 那样先生成完整调用栈。
+ * 只由 {@link StackCaptureUtil} 在检测到运行时支持 StackWalker 后调用，Java 8 运行时不会加载本类。
+ */
+class StackWalkerCapture {
+
+    private static final StackWalker WALKER = StackWalker.getInstance();
+
+    static String capture(int maxFrames) {
+        return WALKER.walk(frames -> frames
+                .dropWhile(f -> StackCaptureUtil.isAgentFrame(f.getClassName()))
+                .limit(maxFrames)
+                .map(f -> f.toStackTraceElement().toString())
+                .collect(Collectors.joining("\n")));
+    }
+
+    static long fingerprint(int frames) {
+        return WALKER.walk(s -> {
+            long h = StackCaptureUtil.FNV_OFFSET;
+            Iterator<StackWalker.StackFrame> it = s
+                    .dropWhile(f -> StackCaptureUtil.isSpawnFrame(f.getClassName()))
+                    .limit(frames)
+                    .iterator();
+            while (it.hasNext()) {
+                StackWalker.StackFrame f = it.next();
+                h = StackCaptureUtil.hashFrame(h, f.getClassName(), f.getMethodName());
+            }
+            return h;
+        });
+    }
+}